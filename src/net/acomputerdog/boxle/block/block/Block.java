@@ -36,6 +36,11 @@ public class Block implements Identifiable {
 
     private BlockTex tex;
 
+    /**
+     * Dense ID assigned by Blocks.register(), or -1 if this block is not registered.
+     */
+    private int runtimeId = -1;
+
     /**
      * Creates a new Block
      *
@@ -59,6 +64,19 @@ public class Block implements Identifiable {
         return id;
     }
 
+    /**
+     * Gets the dense runtime ID of this block.  Only valid for this run of the game.
+     *
+     * @return Return the runtime ID of this block, or -1 if it has not been registered.
+     */
+    public int getRuntimeId() {
+        return runtimeId;
+    }
+
+    void setRuntimeId(int runtimeId) {
+        this.runtimeId = runtimeId;
+    }
+
     /**
      * Gets the name of this block
      *
@@ -224,22 +242,27 @@ public class Block implements Identifiable {
 
     public void setCollidable(boolean collidable) {
         this.isCollidable = collidable;
+        updateProperties();
     }
 
     public void setTransparent(boolean isTransparent) {
         this.isTransparent = isTransparent;
+        updateProperties();
     }
 
     public void setLightReduction(byte lightReduction) {
         this.lightReduction = lightReduction;
+        updateProperties();
     }
 
     public void setLightOutput(byte lightOutput) {
         this.lightOutput = lightOutput;
+        updateProperties();
     }
 
     public void setRenderable(boolean renderable) {
         this.renderable = renderable;
+        updateProperties();
     }
 
     public void setBounds(AABBF bounds) {
@@ -250,6 +273,12 @@ public class Block implements Identifiable {
         this.tex = tex;
     }
 
+    private void updateProperties() {
+        if (runtimeId >= 0) {
+            Blocks.updateProperties(this);
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -4,9 +4,23 @@ import net.acomputerdog.boxle.block.sim.loader.PropLoader;
 import net.acomputerdog.boxle.block.sim.sim.Sim;
 import net.acomputerdog.core.storage.Registry;
 
+import java.util.Arrays;
+
 public class Blocks {
     public static final Registry<Block> BLOCKS = new Registry<>();
 
+    /*
+     * Flat property tables indexed by runtime block ID.  Hot loops (meshing, heightmaps, collision) read these instead
+     * of dereferencing Block objects.  Must be declared before the blocks below so they exist during registration.
+     */
+    private static Block[] idToBlock = new Block[16];
+    private static boolean[] transparentTable = new boolean[16];
+    private static boolean[] renderableTable = new boolean[16];
+    private static boolean[] collidableTable = new boolean[16];
+    private static byte[] lightReductionTable = new byte[16];
+    private static byte[] lightOutputTable = new byte[16];
+    private static int numBlocks = 0;
+
     public static final Block air = createAirBlock();
 
     public static final Block steel = loadInternalProp("steel");
@@ -30,7 +44,7 @@ public class Blocks {
 
     private static Block loadInternalProp(String name) {
         Block block = PropLoader.loadAndCreateBlock(name, Blocks.class.getResourceAsStream("/prop/block/" + name + ".prop"));
-        BLOCKS.register(block);
+        register(block);
         Sim.LOGGER.logDetail("Loaded block from internal prop: " + name);
         return block;
     }
@@ -45,8 +59,77 @@ public class Blocks {
         block.setCollidable(false);
         block.setTransparent(true);
         block.setLightReduction((byte) 0);
+        register(block);
+        return block;
+    }
+
+    /**
+     * Registers a block and assigns it the next dense runtime ID.
+     * Runtime IDs are only valid for this run of the game, and must not be saved.
+     *
+     * @param block The block to register
+     * @return Return the block
+     */
+    public static synchronized Block register(Block block) {
+        if (block == null) throw new IllegalArgumentException("Cannot register a null block!");
         BLOCKS.register(block);
+        int id = numBlocks;
+        if (id >= idToBlock.length) {
+            int newSize = idToBlock.length * 2;
+            idToBlock = Arrays.copyOf(idToBlock, newSize);
+            transparentTable = Arrays.copyOf(transparentTable, newSize);
+            renderableTable = Arrays.copyOf(renderableTable, newSize);
+            collidableTable = Arrays.copyOf(collidableTable, newSize);
+            lightReductionTable = Arrays.copyOf(lightReductionTable, newSize);
+            lightOutputTable = Arrays.copyOf(lightOutputTable, newSize);
+        }
+        block.setRuntimeId(id);
+        idToBlock[id] = block;
+        updateProperties(block);
+        numBlocks++;
         return block;
     }
 
+    /**
+     * Copies the properties of a registered block into the property tables.  Called by Block when a property changes.
+     *
+     * @param block The block to update
+     */
+    static void updateProperties(Block block) {
+        int id = block.getRuntimeId();
+        transparentTable[id] = block.isTransparent();
+        renderableTable[id] = block.isRenderable();
+        collidableTable[id] = block.isCollidable();
+        lightReductionTable[id] = block.getLightReduction();
+        lightOutputTable[id] = block.getLightOutput();
+    }
+
+    public static Block getBlock(int id) {
+        return idToBlock[id];
+    }
+
+    public static int getNumBlocks() {
+        return numBlocks;
+    }
+
+    public static boolean isTransparent(int id) {
+        return transparentTable[id];
+    }
+
+    public static boolean isRenderable(int id) {
+        return renderableTable[id];
+    }
+
+    public static boolean isCollidable(int id) {
+        return collidableTable[id];
+    }
+
+    public static byte getLightReduction(int id) {
+        return lightReductionTable[id];
+    }
+
+    public static byte getLightOutput(int id) {
+        return lightOutputTable[id];
+    }
+
 }
@@ -1,6 +1,7 @@
 package net.acomputerdog.boxle.config;
 
 import net.acomputerdog.boxle.main.Boxle;
+import net.acomputerdog.boxle.save.world.files.CompressionCodecs;
 import net.acomputerdog.core.logger.CLogger;
 
 import java.io.File;
@@ -82,6 +83,39 @@ public class GameConfig {
 
     public String worldName = "World";
 
+    /**
+     * If true, new region files are stored uncompressed and memory-mapped.  Faster, but uses much more disk space.
+     */
+    public boolean uncompressedRegions = false;
+
+    /**
+     * Compression of chunks in new and existing compressed region files: "none", "deflate", "deflate_dictionary" or
+     * "lz4".  Chunks that were already saved keep their compression until they are saved again.
+     */
+    public String regionCompression = "deflate";
+
+    /**
+     * Level of "deflate" and "deflate_dictionary" compression, from 0 (stored, no compression) to 9 (smallest).
+     */
+    public int regionCompressionLevel = CompressionCodecs.DEFAULT_LEVEL;
+
+    /**
+     * Number of I/O threads for each world, or 0 to choose based on the number of CPUs.
+     */
+    public int ioThreads = 0;
+
+    /**
+     * Memory that open regions may use before far away regions are closed, in MiB.  Counts the buffers, codec state and
+     * header tables of compressed regions (about 0.3 MiB each) and the mapped files of uncompressed ones (16 MiB each).
+     */
+    public int regionCacheSize = 128;
+
+    /**
+     * Number of regions each world may keep open before far away regions are closed.  Every open region holds a file
+     * handle, and compressed regions also hold native zlib state.  Regions within the render distance are never closed.
+     */
+    public int regionCacheMaxOpen = 128;
+
     /**
      * Creates a new config for the given boxle instance.
      *
@@ -119,6 +153,20 @@ public class GameConfig {
             lightingMode = properties.getIntProperty("lighting_mode", lightingMode);
             shadowMode = properties.getIntProperty("shadow_mode", shadowMode);
             worldName = properties.getProperty("world_name", worldName);
+            uncompressedRegions = properties.getBooleanProperty("uncompressed_regions", uncompressedRegions);
+            ioThreads = properties.getIntProperty("io_threads", ioThreads);
+            regionCacheSize = properties.getIntProperty("region_cache_size_mb", regionCacheSize);
+            regionCacheMaxOpen = properties.getIntProperty("region_cache_max_open", regionCacheMaxOpen);
+            regionCompression = properties.getProperty("region_compression", regionCompression);
+            regionCompressionLevel = properties.getIntProperty("region_compression_level", regionCompressionLevel);
+            if (CompressionCodecs.getId(regionCompression) < 0) {
+                logger.logWarning("Unknown region compression \"" + regionCompression + "\", using deflate.");
+                regionCompression = "deflate";
+            }
+            if (regionCompressionLevel < 0 || regionCompressionLevel > 9) {
+                logger.logWarning("Region compression level must be from 0 to 9, using " + CompressionCodecs.DEFAULT_LEVEL + ".");
+                regionCompressionLevel = CompressionCodecs.DEFAULT_LEVEL;
+            }
             logger.logInfo("Loaded game config.");
         } else {
             logger.logWarning("No config file found, creating new one.");
@@ -150,6 +198,12 @@ public class GameConfig {
             properties.setProperty("lighting_mode", String.valueOf(lightingMode));
             properties.setProperty("shadow_mode", String.valueOf(shadowMode));
             properties.setProperty("world_name", String.valueOf(worldName));
+            properties.setProperty("uncompressed_regions", String.valueOf(uncompressedRegions));
+            properties.setProperty("io_threads", String.valueOf(ioThreads));
+            properties.setProperty("region_cache_size_mb", String.valueOf(regionCacheSize));
+            properties.setProperty("region_cache_max_open", String.valueOf(regionCacheMaxOpen));
+            properties.setProperty("region_compression", String.valueOf(regionCompression));
+            properties.setProperty("region_compression_level", String.valueOf(regionCompressionLevel));
             try {
                 properties.store(new FileOutputStream(configFile), "Boxle configuration file.  Make sure any changes remain in the original data type.");
             } catch (java.io.IOException e) {
@@ -8,6 +8,7 @@ import net.acomputerdog.boxle.math.vec.VecConverter;
 import net.acomputerdog.boxle.math.vec.VecPool;
 import net.acomputerdog.boxle.render.util.BoxleFlyByCamera;
 import net.acomputerdog.boxle.world.World;
+import net.acomputerdog.boxle.world.structure.ColumnHeightMap;
 
 public class EntityPlayer extends Entity {
 
@@ -35,6 +36,10 @@ public class EntityPlayer extends Entity {
     public void onSpawn() {
         Vec3i pLoc = VecConverter.floorVec3iFromVec3f(location);
         int origY = pLoc.y;
+        int ground = world.getColumnHeight(pLoc.x, pLoc.z);
+        if (ground != ColumnHeightMap.NO_HEIGHT && ground >= pLoc.y && ground - origY <= 100) {
+            pLoc.y = ground + 1; //skip straight to the surface
+        }
         while (world.getBlockAt(pLoc) != Blocks.air && pLoc.y - origY <= 100) {
             pLoc.y++;
         }
@@ -23,6 +23,7 @@ import net.acomputerdog.boxle.math.vec.VecConverter;
 import net.acomputerdog.boxle.math.vec.VecPool;
 import net.acomputerdog.boxle.render.engine.RenderEngine;
 import net.acomputerdog.boxle.render.util.BoxleFlyByCamera;
+import net.acomputerdog.boxle.world.BlockAccessor;
 import net.acomputerdog.boxle.world.World;
 import net.acomputerdog.core.java.Patterns;
 import net.acomputerdog.core.logger.CLogger;
@@ -200,26 +201,26 @@ public class InputHandler implements ActionListener, AnalogListener {
         }
         Vec3f loc = VecConverter.vector3fToVec3f(result.getContactPoint());
         Vec3i locI = VecConverter.floorVec3iFromVec3f(loc);
-        World world = Boxle.instance().getClient().getPlayer().getWorld();
+        BlockAccessor blocks = Boxle.instance().getClient().getPlayer().getWorld().createAccessor();
         float distanceX = Math.abs(loc.x - Math.round(loc.x));
         float distanceY = Math.abs(loc.y - Math.round(loc.y));
         float distanceZ = Math.abs(loc.z - Math.round(loc.z));
         if (distanceX <= COLLISION_TOLERANCE) {
             if (distanceX <= distanceY && distanceX <= distanceZ) {
-                if (checkBlock(Math.round(loc.x), locI.y, locI.z, locI, world, inside) != null) return locI;
-                if (checkBlock(Math.round(loc.x - 1), locI.y, locI.z, locI, world, inside) != null) return locI;
+                if (checkBlock(Math.round(loc.x), locI.y, locI.z, locI, blocks, inside) != null) return locI;
+                if (checkBlock(Math.round(loc.x - 1), locI.y, locI.z, locI, blocks, inside) != null) return locI;
             }
         }
         if (distanceY <= COLLISION_TOLERANCE) {
             if (distanceY <= distanceX && distanceY <= distanceZ) {
-                if (checkBlock(locI.x, Math.round(loc.y), locI.z, locI, world, inside) != null) return locI;
-                if (checkBlock(locI.x, Math.round(loc.y - 1), locI.z, locI, world, inside) != null) return locI;
+                if (checkBlock(locI.x, Math.round(loc.y), locI.z, locI, blocks, inside) != null) return locI;
+                if (checkBlock(locI.x, Math.round(loc.y - 1), locI.z, locI, blocks, inside) != null) return locI;
             }
         }
         if (distanceZ <= COLLISION_TOLERANCE) {
             if (distanceZ <= distanceX && distanceZ <= distanceY) {
-                if (checkBlock(locI.x, locI.y, Math.round(loc.z), locI, world, inside) != null) return locI;
-                if (checkBlock(locI.x, locI.y, Math.round(loc.z - 1), locI, world, inside) != null) return locI;
+                if (checkBlock(locI.x, locI.y, Math.round(loc.z), locI, blocks, inside) != null) return locI;
+                if (checkBlock(locI.x, locI.y, Math.round(loc.z - 1), locI, blocks, inside) != null) return locI;
             }
         }
         VecPool.free(loc);
@@ -227,8 +228,8 @@ public class InputHandler implements ActionListener, AnalogListener {
         return null;
     }
 
-    private Vec3i checkBlock(int x, int y, int z, Vec3i out, World world, boolean inside) {
-        if (world.getBlockAt(x, y, z).isCollidable() == inside) {
+    private Vec3i checkBlock(int x, int y, int z, Vec3i out, BlockAccessor blocks, boolean inside) {
+        if (Blocks.isCollidable(blocks.getBlockId(x, y, z)) == inside) {
             out.x = x;
             out.y = y;
             out.z = z;
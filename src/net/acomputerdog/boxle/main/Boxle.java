@@ -6,6 +6,7 @@ import com.jme3.math.ColorRGBA;
 import com.jme3.post.FilterPostProcessor;
 import com.jme3.shadow.DirectionalLightShadowFilter;
 import com.jme3.system.AppSettings;
+import com.jme3.system.JmeSystem;
 import net.acomputerdog.boxle.block.block.Blocks;
 import net.acomputerdog.boxle.block.sim.loader.SimLoader;
 import net.acomputerdog.boxle.config.GameConfig;
@@ -71,8 +72,10 @@ public class Boxle extends SimpleApplication {
 
     /**
      * Creates a new Boxle instance
+     *
+     * @param start If true, the game is started, and this only returns when it exits
      */
-    private Boxle() {
+    private Boxle(boolean start) {
         if (instance != null) {
             throw new IllegalStateException("Multiple Boxles cannot be created!");
         }
@@ -82,6 +85,11 @@ public class Boxle extends SimpleApplication {
         worlds = new WorldList(this);
         client = new Client(this);
         server = new Server(this);
+        if (!start) {
+            gameConfig.load();
+            assetManager = JmeSystem.newAssetManager(Thread.currentThread().getContextClassLoader().getResource("com/jme3/asset/Desktop.cfg")); //as start() would, for block materials
+            return;
+        }
         try {
             init();
         } catch (Throwable t) {
@@ -321,7 +329,17 @@ public class Boxle extends SimpleApplication {
      * @param args Program arguments
      */
     public static void main(String[] args) {
-        new Boxle();
+        new Boxle(true);
+    }
+
+    /**
+     * Creates a Boxle instance with its config loaded, without starting the game or opening a window.  Used by tools
+     * and benchmarks that need blocks and worlds, which must not use the render engine, client, or server.
+     *
+     * @return Return the new instance
+     */
+    public static Boxle createOffline() {
+        return new Boxle(false);
     }
 
     public static Boxle instance() {
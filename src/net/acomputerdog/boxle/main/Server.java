@@ -14,16 +14,22 @@ import net.acomputerdog.boxle.render.engine.ChunkRenderer;
 import net.acomputerdog.boxle.render.engine.RenderEngine;
 import net.acomputerdog.boxle.render.util.ChunkNode;
 import net.acomputerdog.boxle.save.SaveManager;
+import net.acomputerdog.boxle.save.io.IOCallback;
+import net.acomputerdog.boxle.save.io.IOFuture;
 import net.acomputerdog.boxle.save.world.files.Region;
 import net.acomputerdog.boxle.world.Chunk;
 import net.acomputerdog.boxle.world.World;
+import net.acomputerdog.boxle.world.WorldView;
 import net.acomputerdog.boxle.world.structure.ChunkTable;
+import net.acomputerdog.boxle.world.structure.RegionCache;
 import net.acomputerdog.core.logger.CLogger;
 
 import java.io.IOException;
 import java.util.Collections;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CopyOnWriteArraySet;
 
@@ -49,6 +55,12 @@ public class Server {
 
     private final Set<Chunk> rebuildChunks = new ConcurrentSkipListSet<>();
 
+    /**
+     * Chunks that finished loading since the last tick, and the locations of chunks that are still loading.
+     */
+    private final Queue<Chunk> loadedChunks = new ConcurrentLinkedQueue<>();
+    private final Set<Vec3i> pendingLoads = Collections.newSetFromMap(new ConcurrentHashMap<Vec3i, Boolean>());
+
     private int numChunks = 0;
     private int numUnload = 0;
 
@@ -107,6 +119,11 @@ public class Server {
         if (config.outputRenderDebugInfo && numChunks > 0) {
             long newTime = System.currentTimeMillis();
             logger.logDetail("Built " + numChunks + " chunk meshes and unloaded " + numUnload + " chunks in " + ((newTime - oldTime) / 1000f) + " seconds.");
+            for (World world : hostedWorlds) {
+                logger.logDetail("World " + world.getName() + ": " + world.getSaveIO().getNumQueuedLoads() + " chunks queued to load, " + world.getSaveIO().getNumCancelledLoads() + " loads cancelled, " + world.getSaveIO().getNumPendingSaves() + " chunks waiting to be written.");
+                RegionCache regions = world.getRegionCache();
+                logger.logDetail("World " + world.getName() + ": " + regions.size() + "/" + regions.getMaxOpen() + " regions open using " + (regions.getMemorySize() / 1024 / 1024) + "/" + (regions.getMaxSize() / 1024 / 1024) + " MiB, " + regions.getHits() + " hits, " + regions.getMisses() + " misses, " + regions.getEvictions() + " evictions.");
+            }
         }
 
         for (World world : hostedWorlds) {
@@ -119,15 +136,12 @@ public class Server {
     private void unloadExtraRegions() {
         for (World world : hostedWorlds) {
             Vec3i center = CoordConverter.globalToRegion(VecConverter.floorVec3iFromVec3f(boxle.getClient().getPlayer().getLocation(), VecPool.createVec3i()));
-            Set<Region> regions = world.getRegionSet();
-            for (Region region : regions) {
+            //regions stay in the world until their worker closes them, so chunks waiting to be written do not reopen them
+            for (Region region : world.getRegionCache().evict(center.x, center.y, center.z, CoordConverter.regionLocOfChunkCeil(renderDistanceH), CoordConverter.regionLocOfChunkCeil(renderDistanceV))) {
                 Vec3i rLoc = region.getLoc();
-                if (rLoc.x > center.x + CoordConverter.regionLocOfChunkCeil(renderDistanceH) || rLoc.x < center.x - CoordConverter.regionLocOfChunkCeil(renderDistanceH) || rLoc.y > center.y + CoordConverter.regionLocOfChunkCeil(renderDistanceV) || rLoc.y < center.y - CoordConverter.regionLocOfChunkCeil(renderDistanceV) || rLoc.z > center.z + CoordConverter.regionLocOfChunkCeil(renderDistanceH) || rLoc.z < center.z - CoordConverter.regionLocOfChunkCeil(renderDistanceH)) {
-                    System.out.println("Unloading region at " + rLoc.asCoords());
-                    world.removeRegion(region);
-                    SaveManager.unloadRegion(region);
-                }
+                System.out.println("Unloading region at " + rLoc.asCoords());
                 VecPool.free(rLoc);
+                SaveManager.unloadRegion(region);
             }
             VecPool.free(center);
         }
@@ -170,40 +184,20 @@ public class Server {
     }
 
     private void decorateChunks() {
-        //there has to be a better way to check neighbors...
         for (World world : hostedWorlds) {
             Queue<Chunk> decorateChunks = world.getDecorateChunks();
             for (Chunk chunk : decorateChunks) {
-                Vec3i nLoc = chunk.getLocation();
-                nLoc.x++;
-                ChunkTable chunks = world.getChunks();
-                if (chunks.getChunk(nLoc) != null) {
-                    nLoc.x -= 2;
-                    if (chunks.getChunk(nLoc) != null) {
-                        nLoc.x++;
-                        nLoc.y++;
-                        if (chunks.getChunk(nLoc) != null) {
-                            nLoc.y -= 2;
-                            if (chunks.getChunk(nLoc) != null) {
-                                nLoc.y++;
-                                nLoc.z++;
-                                if (chunks.getChunk(nLoc) != null) {
-                                    nLoc.z -= 2;
-                                    if (chunks.getChunk(nLoc) != null) {
-                                        decorateChunks.remove(chunk);
-                                        world.getGenerator().generateDecorations(chunk);
-                                        chunk.setModifiedFromLoad(true);
-                                        chunk.markDecorated();
-                                        chunk.setNeedsRebuild(true);
-                                        chunk.setModifiedFromLoad(true);
-                                        SaveManager.saveChunkDelayed(chunk);
-                                    }
-                                }
-                            }
-                        }
-                    }
+                if (chunk.hasAllNeighbors()) { //decorations may reach into any neighbor
+                    decorateChunks.remove(chunk);
+                    WorldView view = new WorldView(chunk);
+                    world.getGenerator().generateDecorations(view);
+                    view.finish();
+                    chunk.setModifiedFromLoad(true);
+                    chunk.markDecorated();
+                    chunk.setNeedsRebuild(true);
+                    chunk.setModifiedFromLoad(true);
+                    SaveManager.saveChunkDelayed(chunk);
                 }
-                VecPool.free(nLoc);
             }
         }
     }
@@ -228,6 +222,9 @@ public class Server {
     private void rebuildNeighborChunks() {
         for (Chunk chunk : rebuildChunks) {
             rebuildChunks.remove(chunk);
+            if (skipHiddenChunk(chunk, false)) {
+                continue;
+            }
             numChunks++;
             Vec3i cLoc = chunk.getLocation();
             ChunkNode node = new ChunkNode("chunk@" + cLoc.asCoords());
@@ -254,8 +251,19 @@ public class Server {
             VecPool.free(lastPlayerCLoc);
             lastPlayerCLoc = center;
             spiral = new Spiral2i(VecPool.getVec2i(center.x, center.z));
+            world.getSaveIO().setLoadCenter(center, renderDistanceH, renderDistanceV);
         }
         GameConfig config = boxle.getGameConfig();
+        Chunk loaded;
+        while (numChunks < config.maxLoadedChunksPerTick && (loaded = loadedChunks.poll()) != null) {
+            if (loaded.isLoaded() && loaded.needsRebuild()) { //may have been unloaded or built since
+                rebuildChunks.remove(loaded);
+                if (!skipHiddenChunk(loaded, true)) {
+                    numChunks++;
+                    rebuildChunk(loaded);
+                }
+            }
+        }
         while (numChunks < config.maxLoadedChunksPerTick) {
             spiral.next(spiralLoc);
             int sX = spiralLoc.x;
@@ -272,26 +280,97 @@ public class Server {
                 Vec3i newLoc = VecPool.getVec3i(sX, center.y + y, sZ);
                 Chunk chunk = chunks.getChunk(newLoc);
                 if (chunk == null) {
-                    chunk = SaveManager.loadOrGenerateChunk(world, newLoc);
+                    chunk = loadChunk(world, newLoc);
                     //chunk = world.loadOrGenerateChunk(newLoc);
                 }
                 if (chunk != null && chunk.needsRebuild()) { //if null chunk has not been loaded yet
-                    numChunks++;
                     rebuildChunks.remove(chunk); //make sure the chunk is not rendered twice
-                    ChunkNode node = new ChunkNode("chunk@" + newLoc.asCoords());
-                    buildChunk(chunk, node, true);
-                    ChunkNode oldNode = chunk.getChunkNode();
-                    if (oldNode.getParent() != null) {
-                        engine.removeNode(chunk.getChunkNode());
+                    if (skipHiddenChunk(chunk, true)) {
+                        VecPool.free(newLoc);
+                        continue;
                     }
-                    chunk.setChunkNode(node);
-                    engine.addNode(node);
+                    numChunks++;
+                    rebuildChunk(chunk);
                     VecPool.free(newLoc);
                 }
             }
         }
     }
 
+    /**
+     * Gets a chunk, starting to load it if needed.  A chunk that is not ready yet is added to loadedChunks when it
+     * finishes loading, so it is built without waiting for the spiral to come back to it.
+     *
+     * @param world The world containing the chunk
+     * @param loc   The location of the chunk
+     * @return Return the chunk, or null if it is still loading
+     */
+    private Chunk loadChunk(World world, Vec3i loc) {
+        if (pendingLoads.contains(loc)) {
+            return null;
+        }
+        IOFuture<Chunk> future = SaveManager.loadChunkAsync(world, loc);
+        if (!future.isDone()) {
+            final Vec3i key = loc.duplicate();
+            if (pendingLoads.add(key)) {
+                future.addCallback(new IOCallback<Chunk>() {
+                    @Override
+                    public void onComplete(Chunk result) {
+                        pendingLoads.remove(key);
+                        loadedChunks.add(result);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable error) {
+                        pendingLoads.remove(key); //cancelled or failed, the spiral will ask again if it is still in range
+                    }
+                });
+            }
+        }
+        return future.getNow();
+    }
+
+    /**
+     * Builds a new mesh for a chunk and replaces its old one.
+     *
+     * @param chunk The chunk to build
+     */
+    private void rebuildChunk(Chunk chunk) {
+        Vec3i cLoc = chunk.getLocation();
+        ChunkNode node = new ChunkNode("chunk@" + cLoc.asCoords());
+        VecPool.free(cLoc);
+        buildChunk(chunk, node, true);
+        ChunkNode oldNode = chunk.getChunkNode();
+        if (oldNode.getParent() != null) {
+            engine.removeNode(oldNode);
+        }
+        chunk.setChunkNode(node);
+        engine.addNode(node);
+    }
+
+
+    /**
+     * Skips meshing a chunk that has no visible faces (all air, or solid and buried in solid chunks).
+     * Any old mesh is removed, and no ChunkNode is created.
+     *
+     * @param chunk           The chunk to check
+     * @param notifyNeighbors If true, neighbors are notified as if the chunk was rebuilt
+     * @return Return true if the chunk was skipped
+     */
+    private boolean skipHiddenChunk(Chunk chunk, boolean notifyNeighbors) {
+        if (!ChunkRenderer.canSkipMesh(chunk)) {
+            return false;
+        }
+        chunk.setNeedsRebuild(false);
+        ChunkNode oldNode = chunk.getChunkNode();
+        if (oldNode.getParent() != null) {
+            engine.removeNode(oldNode);
+        }
+        if (notifyNeighbors) {
+            notifyNeighbors(chunk);
+        }
+        return true;
+    }
 
     public void buildChunk(Chunk chunk, Node node, boolean notifyNeighbors) {
         chunk.setNeedsRebuild(false);
@@ -299,60 +378,68 @@ public class Server {
         Vec3i cLoc = chunk.getLocation();
         Vec3i gLoc = CoordConverter.chunkToGlobal(cLoc.duplicate());
         ChunkRenderer.buildChunkMesh(gLoc, chunk, node);
+        VecPool.free(cLoc);
+        VecPool.free(gLoc);
 
         if (notifyNeighbors) {
-            if (config.notifyNeighborsMode >= 0) {
-                ChunkTable chunks = chunk.getWorld().getChunks();
-                //immediate neighbors
-                notifyNeighbor(cLoc, 1, 0, 0, chunks);
-                notifyNeighbor(cLoc, -1, 0, 0, chunks);
-                notifyNeighbor(cLoc, 0, 1, 0, chunks);
-                notifyNeighbor(cLoc, 0, -1, 0, chunks);
-                notifyNeighbor(cLoc, 0, 0, 1, chunks);
-                notifyNeighbor(cLoc, 0, 0, -1, chunks);
-                if (config.notifyNeighborsMode >= 1) {
-                    //edges
-                    notifyNeighbor(cLoc, 1, 1, 0, chunks);
-                    notifyNeighbor(cLoc, 1, -1, 0, chunks);
-                    notifyNeighbor(cLoc, -1, 1, 0, chunks);
-                    notifyNeighbor(cLoc, -1, -1, 0, chunks);
-                    notifyNeighbor(cLoc, 1, 0, 1, chunks);
-                    notifyNeighbor(cLoc, 1, 0, -1, chunks);
-                    notifyNeighbor(cLoc, -1, 0, 1, chunks);
-                    notifyNeighbor(cLoc, 1, 0, -1, chunks);
-                    notifyNeighbor(cLoc, 0, 1, 1, chunks);
-                    notifyNeighbor(cLoc, 0, -1, 1, chunks);
-                    notifyNeighbor(cLoc, 0, 1, -1, chunks);
-                    notifyNeighbor(cLoc, 0, -1, -1, chunks);
-                    if (config.notifyNeighborsMode >= 2) {
-                        //corners
-                        notifyNeighbor(cLoc, 1, 1, 1, chunks);
-                        notifyNeighbor(cLoc, 1, 1, -1, chunks);
-                        notifyNeighbor(cLoc, -1, 1, 1, chunks);
-                        notifyNeighbor(cLoc, -1, 1, -1, chunks);
-                        notifyNeighbor(cLoc, 1, -1, 1, chunks);
-                        notifyNeighbor(cLoc, 1, -1, -1, chunks);
-                        notifyNeighbor(cLoc, -1, -1, 1, chunks);
-                        notifyNeighbor(cLoc, -1, -1, -1, chunks);
-                        if (config.notifyNeighborsMode >= 3) {
-                            //2nd layer immediates
-                            notifyNeighbor(cLoc, 2, 0, 0, chunks);
-                            notifyNeighbor(cLoc, -2, 0, 0, chunks);
-                            notifyNeighbor(cLoc, 0, 2, 0, chunks);
-                            notifyNeighbor(cLoc, 0, -2, 0, chunks);
-                            notifyNeighbor(cLoc, 0, 0, 2, chunks);
-                            notifyNeighbor(cLoc, 0, 0, -2, chunks);
-                        }
+            notifyNeighbors(chunk);
+        }
+    }
+
+    private void notifyNeighbors(Chunk chunk) {
+        if (config.notifyNeighborsMode >= 0) {
+            //immediate neighbors
+            notifyNeighbor(chunk, 1, 0, 0);
+            notifyNeighbor(chunk, -1, 0, 0);
+            notifyNeighbor(chunk, 0, 1, 0);
+            notifyNeighbor(chunk, 0, -1, 0);
+            notifyNeighbor(chunk, 0, 0, 1);
+            notifyNeighbor(chunk, 0, 0, -1);
+            if (config.notifyNeighborsMode >= 1) {
+                //edges
+                notifyNeighbor(chunk, 1, 1, 0);
+                notifyNeighbor(chunk, 1, -1, 0);
+                notifyNeighbor(chunk, -1, 1, 0);
+                notifyNeighbor(chunk, -1, -1, 0);
+                notifyNeighbor(chunk, 1, 0, 1);
+                notifyNeighbor(chunk, 1, 0, -1);
+                notifyNeighbor(chunk, -1, 0, 1);
+                notifyNeighbor(chunk, 1, 0, -1);
+                notifyNeighbor(chunk, 0, 1, 1);
+                notifyNeighbor(chunk, 0, -1, 1);
+                notifyNeighbor(chunk, 0, 1, -1);
+                notifyNeighbor(chunk, 0, -1, -1);
+                if (config.notifyNeighborsMode >= 2) {
+                    //corners
+                    notifyNeighbor(chunk, 1, 1, 1);
+                    notifyNeighbor(chunk, 1, 1, -1);
+                    notifyNeighbor(chunk, -1, 1, 1);
+                    notifyNeighbor(chunk, -1, 1, -1);
+                    notifyNeighbor(chunk, 1, -1, 1);
+                    notifyNeighbor(chunk, 1, -1, -1);
+                    notifyNeighbor(chunk, -1, -1, 1);
+                    notifyNeighbor(chunk, -1, -1, -1);
+                    if (config.notifyNeighborsMode >= 3) {
+                        //2nd layer immediates
+                        notifyNeighbor(chunk, 2, 0, 0);
+                        notifyNeighbor(chunk, -2, 0, 0);
+                        notifyNeighbor(chunk, 0, 2, 0);
+                        notifyNeighbor(chunk, 0, -2, 0);
+                        notifyNeighbor(chunk, 0, 0, 2);
+                        notifyNeighbor(chunk, 0, 0, -2);
                     }
                 }
             }
         }
-        VecPool.free(cLoc);
-        VecPool.free(gLoc);
     }
 
-    private void notifyNeighbor(Vec3i cLoc, int x, int y, int z, ChunkTable chunks) {
-        Chunk nChunk = chunks.getChunk(x + cLoc.x, y + cLoc.y, z + cLoc.z);
+    private void notifyNeighbor(Chunk chunk, int x, int y, int z) {
+        Chunk nChunk;
+        if (Math.abs(x) <= 1 && Math.abs(y) <= 1 && Math.abs(z) <= 1) {
+            nChunk = chunk.getNeighbor(x, y, z);
+        } else { //not linked, look it up
+            nChunk = chunk.getWorld().getChunks().getChunk(x + chunk.getXLoc(), y + chunk.getYLoc(), z + chunk.getZLoc());
+        }
         if (nChunk != null && !rebuildChunks.contains(nChunk)) {
             rebuildChunks.add(nChunk);
             nChunk.setNeedsRebuild(false);
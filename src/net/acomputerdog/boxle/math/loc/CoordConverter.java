@@ -9,12 +9,16 @@ public class CoordConverter {
     private static final int chunkSize = Chunk.CHUNK_SIZE;
 
     public static Vec3i globalToChunk(Vec3i global) {
-        global.x = (int) Math.floor((float) global.x / (float) chunkSize);
-        global.y = (int) Math.floor((float) global.y / (float) chunkSize);
-        global.z = (int) Math.floor((float) global.z / (float) chunkSize);
+        global.x = globalToChunk(global.x);
+        global.y = globalToChunk(global.y);
+        global.z = globalToChunk(global.z);
         return global;
     }
 
+    public static int globalToChunk(int global) {
+        return global >> Chunk.CHUNK_SHIFT; //arithmetic shift rounds towards negative infinity, like floor()
+    }
+
     public static Vec3i globalToRegion(Vec3i global) {
         global.x = (int) Math.floor((float) Math.floor((float) global.x / (float) chunkSize) / (float) Region.REGION_SIZE);
         global.y = (int) Math.floor((float) Math.floor((float) global.y / (float) chunkSize) / (float) Region.REGION_SIZE);
@@ -30,12 +34,7 @@ public class CoordConverter {
     }
 
     public static int globalToBlock(int global) {
-        if (global >= 0) {
-            return global % chunkSize;
-        } else {
-            return chunkSize - 1 + ((global + 1) % chunkSize);
-        }
-
+        return global & Chunk.CHUNK_MASK;
     }
 
     public static Vec3i chunkToGlobal(Vec3i chunk) {
@@ -9,36 +9,50 @@ import jme3tools.optimize.GeometryBatchFactory;
 import net.acomputerdog.boxle.block.block.Block;
 import net.acomputerdog.boxle.block.block.BlockFace;
 import net.acomputerdog.boxle.block.block.BlockTex;
+import net.acomputerdog.boxle.block.block.Blocks;
 import net.acomputerdog.boxle.math.vec.Vec3i;
 import net.acomputerdog.boxle.math.vec.VecPool;
 import net.acomputerdog.boxle.world.Chunk;
+import net.acomputerdog.boxle.world.ChunkSnapshot;
 
 public class ChunkRenderer {
     private static final int chunkSize = Chunk.CHUNK_SIZE;
 
     public static void buildChunkMesh(Vec3i gLoc, Chunk chunk, Node node) {
+        if (canSkipMesh(chunk)) {
+            return;
+        }
+        ChunkSnapshot snapshot = chunk.snapshot(); //mesh from a stable copy, blocks may be changed while building
+        Block uniformBlock = snapshot.getUniformBlock();
+        if (uniformBlock != null && !uniformBlock.isRenderable()) {
+            return; //nothing to draw
+        }
+        boolean shellOnly = uniformBlock != null && !uniformBlock.isTransparent(); //inner faces of a solid uniform chunk are always hidden
+        int[] ids = snapshot.exportBlockIds(new int[Chunk.CHUNK_VOLUME]);
         for (int x = 0; x < chunkSize; x++) {
             for (int y = 0; y < chunkSize; y++) {
-                for (int z = 0; z < chunkSize; z++) {
-                    Block block = chunk.getBlockAt(x, y, z);
-                    if (block != null && block.isRenderable()) {
-                        BlockTex tex = block.getTextures();
-                        if (isTransparent(x + 1, y, z, chunk)) {
+                boolean edgeRow = x == 0 || x == chunkSize - 1 || y == 0 || y == chunkSize - 1;
+                int zStep = (shellOnly && !edgeRow) ? chunkSize - 1 : 1;
+                for (int z = 0; z < chunkSize; z += zStep) {
+                    int id = ids[Chunk.getBlockIndex(x, y, z)];
+                    if (Blocks.isRenderable(id)) {
+                        BlockTex tex = Blocks.getBlock(id).getTextures();
+                        if (isTransparent(x + 1, y, z, chunk, ids)) {
                             addFace(node, tex, gLoc, BlockFace.RIGHT, x, y, z);
                         }
-                        if (isTransparent(x - 1, y, z, chunk)) {
+                        if (isTransparent(x - 1, y, z, chunk, ids)) {
                             addFace(node, tex, gLoc, BlockFace.LEFT, x, y, z);
                         }
-                        if (isTransparent(x, y + 1, z, chunk)) {
+                        if (isTransparent(x, y + 1, z, chunk, ids)) {
                             addFace(node, tex, gLoc, BlockFace.TOP, x, y, z);
                         }
-                        if (isTransparent(x, y - 1, z, chunk)) {
+                        if (isTransparent(x, y - 1, z, chunk, ids)) {
                             addFace(node, tex, gLoc, BlockFace.BOTTOM, x, y, z);
                         }
-                        if (isTransparent(x, y, z + 1, chunk)) {
+                        if (isTransparent(x, y, z + 1, chunk, ids)) {
                             addFace(node, tex, gLoc, BlockFace.FRONT, x, y, z);
                         }
-                        if (isTransparent(x, y, z - 1, chunk)) {
+                        if (isTransparent(x, y, z - 1, chunk, ids)) {
                             addFace(node, tex, gLoc, BlockFace.BACK, x, y, z);
                         }
                     }
@@ -48,32 +62,49 @@ public class ChunkRenderer {
         GeometryBatchFactory.optimize(node);
     }
 
-    private static boolean isTransparent(int x, int y, int z, Chunk chunk) {
+    /**
+     * Checks if a chunk has no visible faces, either because it is empty or because it is solid and surrounded by solid
+     * chunks.  Such chunks do not need a mesh at all.
+     *
+     * @param chunk The chunk to check
+     * @return Return true if the chunk can be skipped
+     */
+    public static boolean canSkipMesh(Chunk chunk) {
+        if (chunk.isAllAir()) {
+            return true;
+        }
+        if (!chunk.isAllOpaque()) {
+            return false;
+        }
+        return chunk.hasAllFaceNeighbors() &&
+                isOpaqueChunk(chunk.getNeighbor(1, 0, 0)) && isOpaqueChunk(chunk.getNeighbor(-1, 0, 0)) &&
+                isOpaqueChunk(chunk.getNeighbor(0, 1, 0)) && isOpaqueChunk(chunk.getNeighbor(0, -1, 0)) &&
+                isOpaqueChunk(chunk.getNeighbor(0, 0, 1)) && isOpaqueChunk(chunk.getNeighbor(0, 0, -1));
+    }
+
+    private static boolean isOpaqueChunk(Chunk chunk) {
+        return chunk != null && chunk.isAllOpaque(); //unloaded neighbors are drawn as transparent
+    }
+
+    private static boolean isTransparent(int x, int y, int z, Chunk chunk, int[] ids) {
         if (x >= chunkSize || x < 0 || y >= chunkSize || y < 0 || z >= chunkSize || z < 0) {
             Chunk newChunk = findNeighborChunk(x, y, z, chunk);
             if (newChunk == null) {
                 return true;
             }
             Vec3i blockPos = findLocInNeighbor(x, y, z);
-            Block newBlock = newChunk.getBlockAt(blockPos.x, blockPos.y, blockPos.z);
+            int newId = newChunk.readBlockIdAt(blockPos.x, blockPos.y, blockPos.z);
             VecPool.free(blockPos);
-            return newBlock == null || newBlock.isTransparent();
+            return Blocks.isTransparent(newId);
         }
-        Block block = chunk.getBlockAt(x, y, z);
-        return block == null || block.isTransparent();
+        return Blocks.isTransparent(ids[Chunk.getBlockIndex(x, y, z)]);
     }
 
     private static Chunk findNeighborChunk(int x, int y, int z, Chunk currChunk) {
-        Vec3i loc = currChunk.getLocation();
-        if (x >= chunkSize) loc.x += 1;
-        if (x < 0) loc.x -= 1;
-        if (y >= chunkSize) loc.y += 1;
-        if (y < 0) loc.y -= 1;
-        if (z >= chunkSize) loc.z += 1;
-        if (z < 0) loc.z -= 1;
-        Chunk newChunk = currChunk.getWorld().getChunks().getChunk(loc);
-        VecPool.free(loc);
-        return newChunk;
+        int nX = (x >= chunkSize) ? 1 : ((x < 0) ? -1 : 0);
+        int nY = (y >= chunkSize) ? 1 : ((y < 0) ? -1 : 0);
+        int nZ = (z >= chunkSize) ? 1 : ((z < 0) ? -1 : 0);
+        return currChunk.getNeighbor(nX, nY, nZ);
     }
 
     private static Vec3i findLocInNeighbor(int x, int y, int z) {
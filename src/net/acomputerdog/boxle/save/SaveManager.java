@@ -1,8 +1,10 @@
 package net.acomputerdog.boxle.save;
 
 import net.acomputerdog.boxle.math.vec.Vec3i;
-import net.acomputerdog.boxle.save.io.IOThread;
+import net.acomputerdog.boxle.save.io.IOFuture;
+import net.acomputerdog.boxle.save.io.WorldIO;
 import net.acomputerdog.boxle.save.world.WorldSave;
+import net.acomputerdog.boxle.save.world.files.ChunkPresenceIndex;
 import net.acomputerdog.boxle.save.world.files.Region;
 import net.acomputerdog.boxle.world.Chunk;
 import net.acomputerdog.boxle.world.World;
@@ -41,7 +43,7 @@ public class SaveManager {
         if (save == null) {
             save = new WorldSave(name);
             save.open();
-            save.createWorld().getSaveIO(); //create world and create thread
+            save.createWorld().getSaveIO(); //create world and create threads
             saveMap.put(name, save);
         }
         return save;
@@ -52,7 +54,7 @@ public class SaveManager {
         if (save == null) {
             initializeWorldDirectory(name);
             save = new WorldSave(name);
-            save.createWorld().getSaveIO(); //create world and create thread
+            save.createWorld().getSaveIO(); //create world and create threads
             saveMap.put(name, save);
         }
         return save;
@@ -82,6 +84,33 @@ public class SaveManager {
         world.getSaveIO().addLoad(loc);
     }
 
+    /**
+     * Gets a chunk, loading or generating it if it is not loaded.  Unlike loadOrGenerateChunk(), the caller is told when
+     * the chunk is ready instead of having to ask again.
+     *
+     * @param world The world containing the chunk
+     * @param loc   The location of the chunk
+     * @return Return a future that finishes with the chunk
+     */
+    public static IOFuture<Chunk> loadChunkAsync(World world, Vec3i loc) {
+        Chunk chunk = world.getChunks().getChunk(loc);
+        if (chunk != null) {
+            return IOFuture.completed(chunk);
+        }
+        if (isNewChunk(world, loc)) {
+            return IOFuture.completed(world.createNewChunk(loc));
+        }
+        return world.getSaveIO().loadAsync(loc);
+    }
+
+    public static IOFuture<Chunk> saveChunkAsync(Chunk chunk) {
+        return chunk.getWorld().getSaveIO().saveAsync(chunk);
+    }
+
+    public static IOFuture<Region> unloadRegionAsync(Region region) {
+        return region.getWorld().getSaveIO().unloadRegionAsync(region);
+    }
+
     public static File getRegionFile(String world, int x, int y, int z) {
         File dir = new File(getWorldDir(world), "/regions/");
         if (!(dir.isDirectory() || dir.mkdirs())) {
@@ -107,20 +136,30 @@ public class SaveManager {
     }
 
     public static void waitForSave() {
-        IOThread.waitForEnd();
+        WorldIO.waitForEnd();
     }
 
     public static Chunk loadOrGenerateChunk(World world, Vec3i loc) {
         Chunk chunk = world.getChunks().getChunk(loc);
         if (chunk == null) {
-            Region region = world.getRegion(loc);
-            if (region == null || region.hasChunkGlobal(loc)) {
-                SaveManager.loadChunkDelayed(world, loc);
-            } else {
+            if (isNewChunk(world, loc)) {
                 return world.createNewChunk(loc);
             }
+            SaveManager.loadChunkDelayed(world, loc);
         }
         return chunk;
     }
 
+    /**
+     * Checks if a chunk is known to have never been saved, without opening its region.
+     */
+    private static boolean isNewChunk(World world, Vec3i loc) {
+        int presence = world.getSaveIO().getPresenceIndex().getPresence(loc.x, loc.y, loc.z);
+        if (presence == ChunkPresenceIndex.UNKNOWN) {
+            Region region = world.getRegionChunkLoc(loc.x, loc.y, loc.z); //only if it is already open
+            return region != null && !region.hasChunkGlobal(loc);
+        }
+        return presence == ChunkPresenceIndex.ABSENT;
+    }
+
 }
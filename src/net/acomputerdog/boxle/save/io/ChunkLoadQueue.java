@@ -0,0 +1,155 @@
+package net.acomputerdog.boxle.save.io;
+
+import net.acomputerdog.boxle.math.vec.Vec3i;
+
+import java.util.*;
+
+/**
+ * Queue of chunk locations to load, nearest to the player first.  When the player moves into a new chunk, setCenter()
+ * re-sorts the queue around the new location and cancels requests that are no longer within the render distance.
+ * <p>
+ * Thread-safe.
+ */
+public class ChunkLoadQueue {
+    private final PriorityQueue<Request> queue = new PriorityQueue<>();
+    private final Set<Vec3i> queued = new HashSet<>();
+
+    private int centerX = 0;
+    private int centerY = 0;
+    private int centerZ = 0;
+
+    /**
+     * Horizontal and vertical distance (in chunks) from the center within which requests are kept.  Negative to keep
+     * every request.
+     */
+    private int rangeH = -1;
+    private int rangeV = -1;
+
+    /**
+     * Used to keep requests of the same distance in the order they were added.
+     */
+    private long nextSequence = 0;
+
+    private long numCancelled = 0;
+
+    /**
+     * Adds a chunk to load, unless it is already queued or outside of the current range.
+     *
+     * @param loc The location of the chunk
+     * @return Return true if the chunk was added
+     */
+    public synchronized boolean add(Vec3i loc) {
+        if (queued.contains(loc)) {
+            return false;
+        }
+        if (!isInRange(loc)) {
+            numCancelled++;
+            return false;
+        }
+        queued.add(loc);
+        queue.add(new Request(loc, getDistance(loc), nextSequence++));
+        return true;
+    }
+
+    /**
+     * Removes the chunk nearest to the center.
+     *
+     * @return Return the location of the chunk, or null if the queue is empty
+     */
+    public synchronized Vec3i poll() {
+        Request request = queue.poll();
+        if (request == null) {
+            return null;
+        }
+        queued.remove(request.loc);
+        return request.loc;
+    }
+
+    /**
+     * Moves the center of the queue.  Requests are re-sorted by their distance to the new center, and requests outside
+     * of the range are cancelled.
+     *
+     * @param x      x-loc of the center chunk
+     * @param y      y-loc of the center chunk
+     * @param z      z-loc of the center chunk
+     * @param rangeH Horizontal distance in chunks to keep requests within, or -1 to keep all requests
+     * @param rangeV Vertical distance in chunks to keep requests within, or -1 to keep all requests
+     * @return Return the locations of the cancelled requests
+     */
+    public synchronized List<Vec3i> setCenter(int x, int y, int z, int rangeH, int rangeV) {
+        centerX = x;
+        centerY = y;
+        centerZ = z;
+        this.rangeH = rangeH;
+        this.rangeV = rangeV;
+        List<Request> requests = new ArrayList<>(queue);
+        List<Vec3i> cancelled = new ArrayList<>();
+        queue.clear();
+        for (Request request : requests) {
+            if (isInRange(request.loc)) {
+                request.distance = getDistance(request.loc);
+                queue.add(request);
+            } else {
+                queued.remove(request.loc);
+                cancelled.add(request.loc);
+                numCancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    public synchronized boolean contains(Vec3i loc) {
+        return queued.contains(loc);
+    }
+
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    /**
+     * Gets the number of requests that were cancelled or refused for being out of range.
+     *
+     * @return Return the number of cancelled requests
+     */
+    public synchronized long getNumCancelled() {
+        return numCancelled;
+    }
+
+    private boolean isInRange(Vec3i loc) {
+        if (rangeH < 0 || rangeV < 0) {
+            return true;
+        }
+        return Math.abs(loc.x - centerX) <= rangeH && Math.abs(loc.y - centerY) <= rangeV && Math.abs(loc.z - centerZ) <= rangeH;
+    }
+
+    private long getDistance(Vec3i loc) {
+        long dX = loc.x - centerX;
+        long dY = loc.y - centerY;
+        long dZ = loc.z - centerZ;
+        return (dX * dX) + (dY * dY) + (dZ * dZ);
+    }
+
+    private static class Request implements Comparable<Request> {
+        private final Vec3i loc;
+        private final long sequence;
+        private long distance;
+
+        private Request(Vec3i loc, long distance, long sequence) {
+            this.loc = loc;
+            this.distance = distance;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Request o) {
+            if (distance != o.distance) {
+                return Long.compare(distance, o.distance);
+            }
+            return Long.compare(sequence, o.sequence);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package net.acomputerdog.boxle.save.io;
+
+import net.acomputerdog.boxle.math.loc.CoordConverter;
+import net.acomputerdog.boxle.world.Chunk;
+import net.acomputerdog.boxle.world.structure.ChunkMap;
+
+import java.util.*;
+
+/**
+ * Chunks waiting to be saved, grouped by region.  A chunk that is saved again while it is waiting is only written once,
+ * and each region is written (and flushed to disk) in one go once its oldest chunk has waited FLUSH_DELAY milliseconds or
+ * it has FLUSH_SIZE chunks waiting.
+ * <p>
+ * Thread-safe.
+ */
+public class ChunkWriteCache {
+    /**
+     * Longest time a chunk waits to be written, in milliseconds.
+     */
+    public static final long FLUSH_DELAY = 5000;
+
+    /**
+     * Number of waiting chunks that causes a region to be written early.
+     */
+    public static final int FLUSH_SIZE = 64;
+
+    /**
+     * Longest time a chunk waits to be appended to the journal while its worker is kept busy with loads, in
+     * milliseconds.
+     */
+    public static final long JOURNAL_DELAY = 50;
+
+    /**
+     * Regions with waiting chunks, in the order that they first had a chunk waiting.
+     */
+    private final Map<Long, PendingRegion> regions = new LinkedHashMap<>();
+
+    /**
+     * Every waiting chunk, by chunk key.
+     */
+    private final Map<Long, Chunk> chunks = new HashMap<>();
+
+    /**
+     * Waiting chunks that were added or saved again since they were last appended to the journal.
+     */
+    private final Map<Long, Chunk> unjournaled = new LinkedHashMap<>();
+
+    /**
+     * Time that the oldest chunk in unjournaled was added.
+     */
+    private long firstUnjournaled;
+
+    /**
+     * Number of chunks removed by pollRegion() or removeRegion() that have not been passed to finishWrite() yet.
+     */
+    private int numWriting = 0;
+
+    /**
+     * Number of chunks that could not be written while shutting down.  They are only in the journal, so it must be kept
+     * for the next start.
+     */
+    private int numFailed = 0;
+
+    /**
+     * Adds a chunk to be written.
+     *
+     * @param chunk The chunk to add
+     * @return Return true if the chunk was added, false if it was already waiting
+     */
+    public synchronized boolean add(Chunk chunk) {
+        Long key = chunk.getKey();
+        if (unjournaled.isEmpty()) {
+            firstUnjournaled = System.currentTimeMillis();
+        }
+        unjournaled.put(key, chunk); //journaled again if it changed after it was journaled
+        if (chunks.containsKey(key)) {
+            return false;
+        }
+        chunks.put(key, chunk);
+        Long regionKey = getRegionKey(chunk.getXLoc(), chunk.getYLoc(), chunk.getZLoc());
+        PendingRegion region = regions.get(regionKey);
+        if (region == null) {
+            regions.put(regionKey, region = new PendingRegion(System.currentTimeMillis()));
+        }
+        region.chunks.add(chunk);
+        return true;
+    }
+
+    /**
+     * Adds a chunk to be written, even if it is not modified, and gets a future that finishes when it is written.  If
+     * the chunk is already waiting, the future of the waiting write is returned.
+     *
+     * @param chunk The chunk to add
+     * @return Return a future that finishes when the chunk is written
+     */
+    public synchronized IOFuture<Chunk> addWithFuture(Chunk chunk) {
+        add(chunk);
+        PendingRegion region = regions.get(getRegionKey(chunk.getXLoc(), chunk.getYLoc(), chunk.getZLoc()));
+        IOFuture<Chunk> future = region.futures.get(chunk.getKey());
+        if (future == null) {
+            region.futures.put(chunk.getKey(), future = new IOFuture<>());
+        }
+        return future;
+    }
+
+    /**
+     * Gets a chunk that is waiting to be written.  A chunk that is loaded again before it is written must be taken from
+     * here, as the copy on disk is out of date.
+     *
+     * @param x x-loc of the chunk
+     * @param y y-loc of the chunk
+     * @param z z-loc of the chunk
+     * @return Return the chunk, or null if it is not waiting
+     */
+    public synchronized Chunk get(int x, int y, int z) {
+        return chunks.get(ChunkMap.pack(x, y, z));
+    }
+
+    /**
+     * Removes the chunks of the first region that is due to be written.
+     *
+     * @param flushAll If true, every region is due
+     * @return Return the chunks of the region, or null if no region is due
+     */
+    public synchronized PendingRegion pollRegion(boolean flushAll) {
+        long now = System.currentTimeMillis();
+        for (Iterator<PendingRegion> it = regions.values().iterator(); it.hasNext(); ) {
+            PendingRegion region = it.next();
+            if (flushAll || region.chunks.size() >= FLUSH_SIZE || now - region.firstAdded >= FLUSH_DELAY) {
+                it.remove();
+                return removeChunks(region);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the chunks of the first region whose oldest chunk has waited FLUSH_DELAY milliseconds, so that regions are
+     * still written while loads keep a worker busy.
+     *
+     * @return Return the chunks of the region, or null if no region has waited that long
+     */
+    public synchronized PendingRegion pollOverdueRegion() {
+        Iterator<PendingRegion> it = regions.values().iterator();
+        if (it.hasNext()) { //regions are in the order they were first added, so only the first can be the oldest
+            PendingRegion region = it.next();
+            if (System.currentTimeMillis() - region.firstAdded >= FLUSH_DELAY) {
+                it.remove();
+                return removeChunks(region);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the chunks of a region, whether or not it is due.  Used before a region is unloaded.
+     *
+     * @param x x-loc of the region
+     * @param y y-loc of the region
+     * @param z z-loc of the region
+     * @return Return the chunks of the region, or null if it has none waiting
+     */
+    public synchronized PendingRegion removeRegion(int x, int y, int z) {
+        PendingRegion region = regions.remove(ChunkMap.pack(x, y, z));
+        return region == null ? null : removeChunks(region);
+    }
+
+    /**
+     * Checks if a chunk has waited JOURNAL_DELAY milliseconds to be appended to the journal.
+     *
+     * @return Return true if the chunks waiting for the journal should be journaled before anything else
+     */
+    public synchronized boolean isJournalOverdue() {
+        return !unjournaled.isEmpty() && System.currentTimeMillis() - firstUnjournaled >= JOURNAL_DELAY;
+    }
+
+    /**
+     * Removes every chunk that needs to be appended to the journal.
+     *
+     * @return Return the chunks, or an empty list if there are none
+     */
+    public synchronized List<Chunk> pollUnjournaled() {
+        if (unjournaled.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Chunk> list = new ArrayList<>(unjournaled.values());
+        unjournaled.clear();
+        return list;
+    }
+
+    /**
+     * Called once the chunks of a region removed by pollRegion() or removeRegion() have been written and forced, or have
+     * failed to be.
+     *
+     * @param region The chunks that were written
+     * @param failed The chunks that could not be written or forced
+     * @param retry  If true, the failed chunks are added again, keeping their futures, to be journaled and written
+     *               later.  If false, they are counted as failed and the journal is never counted as clean.
+     */
+    public synchronized void finishWrite(PendingRegion region, List<Chunk> failed, boolean retry) {
+        numWriting -= region.chunks.size();
+        if (!retry) {
+            numFailed += failed.size();
+            return;
+        }
+        for (Chunk chunk : failed) {
+            add(chunk);
+            final IOFuture<Chunk> future = region.futures.get(chunk.getKey());
+            if (future != null) {
+                PendingRegion pending = regions.get(getRegionKey(chunk.getXLoc(), chunk.getYLoc(), chunk.getZLoc()));
+                IOFuture<Chunk> newer = pending.futures.get(chunk.getKey());
+                if (newer == null) {
+                    pending.futures.put(chunk.getKey(), future);
+                } else { //saved again with a future while it was being written
+                    newer.addCallback(new IOCallback<Chunk>() {
+                        @Override
+                        public void onComplete(Chunk result) {
+                            future.complete(result);
+                        }
+
+                        @Override
+                        public void onFailure(Throwable error) {
+                            future.fail(error);
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if every chunk that was added has been written and forced, so the journal no longer needs any of them.
+     *
+     * @return Return true if no chunks are waiting, being written, or failed to be written
+     */
+    public synchronized boolean isClean() {
+        return chunks.isEmpty() && numWriting == 0 && numFailed == 0;
+    }
+
+    public synchronized boolean isEmpty() {
+        return chunks.isEmpty();
+    }
+
+    public synchronized int size() {
+        return chunks.size();
+    }
+
+    private PendingRegion removeChunks(PendingRegion region) {
+        for (Chunk chunk : region.chunks) {
+            chunks.remove(chunk.getKey());
+            unjournaled.remove(chunk.getKey()); //about to be written anyway
+        }
+        numWriting += region.chunks.size();
+        return region;
+    }
+
+    private static long getRegionKey(int x, int y, int z) {
+        return ChunkMap.pack(CoordConverter.regionLocOfChunk(x), CoordConverter.regionLocOfChunk(y), CoordConverter.regionLocOfChunk(z));
+    }
+
+    /**
+     * The waiting chunks of one region, and the futures of any that were saved with addWithFuture().
+     */
+    public static class PendingRegion {
+        private final List<Chunk> chunks = new ArrayList<>();
+        private final Map<Long, IOFuture<Chunk>> futures = new HashMap<>();
+        private final long firstAdded;
+
+        private PendingRegion(long firstAdded) {
+            this.firstAdded = firstAdded;
+        }
+
+        public List<Chunk> getChunks() {
+            return chunks;
+        }
+
+        /**
+         * Finishes the future of a chunk, if it has one.  Only call once the chunk has been forced, or has failed for
+         * good.
+         *
+         * @param chunk The chunk that was written
+         * @param error The cause of the failure, or null if the chunk was written
+         */
+        public void onWritten(Chunk chunk, Throwable error) {
+            IOFuture<Chunk> future = futures.get(chunk.getKey());
+            if (future != null) {
+                if (error == null) {
+                    future.complete(chunk);
+                } else {
+                    future.fail(error);
+                }
+            }
+        }
+    }
+}
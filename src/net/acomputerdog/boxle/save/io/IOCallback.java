@@ -0,0 +1,23 @@
+package net.acomputerdog.boxle.save.io;
+
+/**
+ * Called when an IOFuture finishes.  Called on the thread that finished the future, usually an I/O worker, or on the
+ * thread adding the callback if the future had already finished.
+ *
+ * @param <T> The type of the result
+ */
+public interface IOCallback<T> {
+    /**
+     * Called when the operation succeeds.
+     *
+     * @param result The result of the operation
+     */
+    public void onComplete(T result);
+
+    /**
+     * Called when the operation fails or is cancelled.
+     *
+     * @param error The cause of the failure, a CancellationException if the operation was cancelled
+     */
+    public void onFailure(Throwable error);
+}
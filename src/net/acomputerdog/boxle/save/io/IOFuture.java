@@ -0,0 +1,172 @@
+package net.acomputerdog.boxle.save.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * The result of an asynchronous load, save, or unload.  Callbacks can be added to react when it finishes instead of
+ * polling for the result.
+ * <p>
+ * Thread-safe.
+ *
+ * @param <T> The type of the result
+ */
+public class IOFuture<T> implements Future<T> {
+    private List<IOCallback<T>> callbacks = new ArrayList<>();
+
+    private boolean isDone = false;
+    private boolean isCancelled = false;
+    private T result;
+    private Throwable error;
+
+    /**
+     * Creates a future that has already finished.
+     *
+     * @param result The result
+     * @param <T>    The type of the result
+     * @return Return the finished future
+     */
+    public static <T> IOFuture<T> completed(T result) {
+        IOFuture<T> future = new IOFuture<>();
+        future.complete(result);
+        return future;
+    }
+
+    /**
+     * Adds a callback to call when this future finishes.  If it has already finished, the callback is called now.
+     *
+     * @param callback The callback to add
+     * @return Return this future
+     */
+    public IOFuture<T> addCallback(IOCallback<T> callback) {
+        synchronized (this) {
+            if (!isDone) {
+                callbacks.add(callback);
+                return this;
+            }
+        }
+        call(callback);
+        return this;
+    }
+
+    /**
+     * Finishes this future successfully.  Does nothing if it has already finished.
+     *
+     * @param result The result
+     * @return Return true if this future was finished by this call
+     */
+    public boolean complete(T result) {
+        List<IOCallback<T>> toCall;
+        synchronized (this) {
+            if (isDone) {
+                return false;
+            }
+            this.result = result;
+            toCall = finish();
+        }
+        for (IOCallback<T> callback : toCall) {
+            call(callback);
+        }
+        return true;
+    }
+
+    /**
+     * Finishes this future with an error.  Does nothing if it has already finished.
+     *
+     * @param error The cause of the failure
+     * @return Return true if this future was finished by this call
+     */
+    public boolean fail(Throwable error) {
+        List<IOCallback<T>> toCall;
+        synchronized (this) {
+            if (isDone) {
+                return false;
+            }
+            this.error = error;
+            isCancelled = error instanceof CancellationException;
+            toCall = finish();
+        }
+        for (IOCallback<T> callback : toCall) {
+            call(callback);
+        }
+        return true;
+    }
+
+    /**
+     * Cancels this future.  The operation itself is not stopped, but its result is ignored.
+     *
+     * @param mayInterruptIfRunning Ignored, I/O workers are never interrupted
+     * @return Return true if this future was cancelled by this call
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return fail(new CancellationException());
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return isCancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return isDone;
+    }
+
+    /**
+     * Gets the result without waiting.
+     *
+     * @return Return the result, or null if this future has not finished or has failed
+     */
+    public synchronized T getNow() {
+        return error == null ? result : null;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!isDone) {
+            wait();
+        }
+        return getResult();
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long end = System.nanoTime() + unit.toNanos(timeout);
+        while (!isDone) {
+            long remaining = end - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getResult();
+    }
+
+    private T getResult() throws ExecutionException {
+        if (isCancelled) {
+            throw (CancellationException) error;
+        }
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+        return result;
+    }
+
+    private List<IOCallback<T>> finish() {
+        isDone = true;
+        notifyAll();
+        List<IOCallback<T>> toCall = callbacks;
+        callbacks = null;
+        return toCall;
+    }
+
+    private void call(IOCallback<T> callback) {
+        if (error == null) {
+            callback.onComplete(result);
+        } else {
+            callback.onFailure(error);
+        }
+    }
+}
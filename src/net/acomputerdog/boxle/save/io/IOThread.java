@@ -1,39 +1,76 @@
 package net.acomputerdog.boxle.save.io;
 
 import net.acomputerdog.boxle.main.Boxle;
+import net.acomputerdog.boxle.math.loc.CoordConverter;
 import net.acomputerdog.boxle.math.vec.Vec3i;
+import net.acomputerdog.boxle.save.SaveManager;
+import net.acomputerdog.boxle.save.util.BlockMap;
+import net.acomputerdog.boxle.save.world.files.ChunkCodec;
+import net.acomputerdog.boxle.save.world.files.ChunkJournal;
+import net.acomputerdog.boxle.save.world.files.ChunkPresenceIndex;
 import net.acomputerdog.boxle.save.world.files.Region;
 import net.acomputerdog.boxle.world.Chunk;
 import net.acomputerdog.boxle.world.World;
-import net.acomputerdog.core.java.Sleep;
 import net.acomputerdog.core.logger.CLogger;
 
 import java.io.IOException;
-import java.util.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 
+/**
+ * One of the I/O workers of a world.  Loads, saves, and unloads the chunks and regions that its WorldIO routes to it, in
+ * that order of priority.  Saved chunks are held in a ChunkWriteCache and written a region at a time, and appended to the
+ * world's ChunkJournal while they wait.  Chunks that have waited ChunkWriteCache.JOURNAL_DELAY for the journal, or
+ * FLUSH_DELAY for their region, go ahead of loads, so a steady stream of loads cannot hold saves back.
+ */
 public class IOThread extends Thread {
-
-    private static final Map<World, IOThread> threadMap = new HashMap<>();
-    private static final CLogger LOGGER_GLOBAL = new CLogger("WorldIO", false, true);
+    /**
+     * Longest time to wait for work before checking if the game is shutting down, in milliseconds.
+     */
+    private static final long IDLE_WAIT = 100;
 
     private final CLogger logger;
+    private final WorldIO io;
     private final World world;
 
-    private final Queue<Vec3i> loadQueue = new ConcurrentLinkedQueue<>();
-    private final Set<Vec3i> loadSet = new ConcurrentSkipListSet<>();
-    private final Queue<Chunk> saveQueue = new ConcurrentLinkedQueue<>();
-    private final Set<Chunk> saveSet = new ConcurrentSkipListSet<>();
+    /**
+     * Notified when work is added.
+     */
+    private final Object workLock = new Object();
+
+    private final ChunkLoadQueue loadQueue = new ChunkLoadQueue();
+    private final ChunkWriteCache writeCache = new ChunkWriteCache();
+
+    /*
+     * Used to encode chunks for the journal.
+     */
+    private final ChunkCodec journalCodec = new ChunkCodec();
+    private final ByteBuffer journalBuffer = ByteBuffer.allocate(ChunkCodec.MAX_LENGTH);
+    private boolean journalReplayed = false;
+
+    /*
+     * Futures of the requests made through the async methods, so that repeated requests share one future.
+     */
+    private final ConcurrentMap<Vec3i, IOFuture<Chunk>> loadFutures = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Region, IOFuture<Region>> regionFutures = new ConcurrentHashMap<>();
     private final Queue<Region> regionQueue = new ConcurrentLinkedQueue<>();
     private final Set<Region> regionSet = new ConcurrentSkipListSet<>();
 
-    private IOThread(World world) {
+    IOThread(WorldIO io, int index) {
         super();
-        this.world = world;
-        super.setName("IO_" + world.getName());
+        this.io = io;
+        this.world = io.getWorld();
+        super.setName("IO_" + world.getName() + "_" + index);
         super.setDaemon(false);
-        logger = new CLogger("IOThread_" + world.getName(), false, true);
+        logger = new CLogger("IOThread_" + world.getName() + "_" + index, false, true);
     }
 
     @Override
@@ -44,7 +81,10 @@ public class IOThread extends Thread {
             while (canRun) {
                 canRun = performTick();
             }
-            world.getWorldSave().getWorldMeta().save();
+            for (IOFuture<Chunk> future : loadFutures.values()) {
+                future.cancel(false); //loads are dropped when shutting down
+            }
+            io.onWorkerStopped();
             logger.logInfo("Stopping.");
         } catch (Throwable t) {
             logger.logFatal("Unhandled Exception in IOThread!", t);
@@ -55,35 +95,57 @@ public class IOThread extends Thread {
     private boolean performTick() {
         boolean canLoadChunks = Boxle.instance().canRunIO();
         boolean performedAction = false;
-        if (canLoadChunks) { //game is not shutting down
+        if (!journalReplayed && (!loadQueue.isEmpty() || !writeCache.isEmpty() || !regionQueue.isEmpty())) {
+            io.replayJournal(); //before touching any chunks, as the regions may be missing chunks that are in the journal
+            journalReplayed = true;
+        }
+        if (canLoadChunks) { //loads come first, but saved chunks must not wait behind them for long
+            if (writeCache.isJournalOverdue() && journalChunks()) {
+                performedAction = true;
+            } else {
+                ChunkWriteCache.PendingRegion chunks = writeCache.pollOverdueRegion();
+                if (chunks != null) {
+                    performedAction = true;
+                    writeChunks(chunks);
+                }
+            }
+        }
+        if (!performedAction && canLoadChunks) { //game is not shutting down
             Vec3i loc = loadQueue.poll();
             if (loc != null) {
                 //System.out.println("Load");
-                loadSet.remove(loc);
                 performedAction = true;
                 try {
-                    Region region = world.getOrLoadRegionChunkLoc(loc.x, loc.y, loc.z);
-                    if (region.hasChunkGlobal(loc)) {
-                        world.addNewChunk(region.readChunk(loc));
-                    } else {
-                        world.createNewChunk(loc); //tell that lazy world to get it's own chunk!
+                    Chunk chunk = world.getChunks().getChunk(loc); //already loaded if it was requested twice
+                    if (chunk == null && (chunk = writeCache.get(loc.x, loc.y, loc.z)) != null) { //not written yet, so the copy on disk is out of date
+                        world.addNewChunk(chunk);
+                    } else if (chunk == null) {
+                        Region region = isChunkSaved(loc) ? world.getOrLoadRegionChunkLoc(loc.x, loc.y, loc.z) : null; //no need to open the region of a new chunk
+                        if (region != null && region.hasChunkGlobal(loc)) {
+                            chunk = region.readChunk(loc);
+                            world.addNewChunk(chunk);
+                        } else {
+                            chunk = world.createNewChunk(loc); //tell that lazy world to get it's own chunk!
+                        }
                     }
+                    completeLoad(loc, chunk);
                 } catch (IOException e) {
                     logger.logWarning("Unable to load chunk at " + loc.asCoords(), e);
+                    failLoad(loc, e);
                 }
             }
         }
-        if (!performedAction) { //no chunks were loaded
-            Chunk chunk = saveQueue.poll();
-            if (chunk != null) {
+        if (!performedAction && canLoadChunks) { //no chunks were loaded, not needed when shutting down as everything is written
+            performedAction = journalChunks();
+        }
+        if (!performedAction) { //no chunks were loaded or journaled
+            ChunkJournal journal = io.getJournal();
+            boolean flushAll = !canLoadChunks || (journal != null && journal.isFull()); //write everything when shutting down, or to empty the journal
+            ChunkWriteCache.PendingRegion chunks = writeCache.pollRegion(flushAll);
+            if (chunks != null) {
                 //System.out.println("Save");
-                saveSet.remove(chunk);
                 performedAction = true;
-                try {
-                    world.getOrLoadRegionChunkLoc(chunk.getXLoc(), chunk.getYLoc(), chunk.getZLoc()).writeChunk(chunk);
-                } catch (Exception e) {
-                    logger.logWarning("Unable to save chunk at " + chunk.asCoords(), e);
-                }
+                writeChunks(chunks);
             } else { //no chunks were loaded or saved
                 Region region = regionQueue.poll();
                 if (region != null) {
@@ -91,74 +153,269 @@ public class IOThread extends Thread {
                     regionSet.remove(region);
                     performedAction = true;
                     region.getWorld().removeRegion(region);
-                    if (region.isModifiedFromLoad()) {
+                    Vec3i regionLoc = region.getLoc();
+                    chunks = writeCache.removeRegion(regionLoc.x, regionLoc.y, regionLoc.z);
+                    if (chunks != null) {
+                        writeChunks(region, chunks); //failed chunks go back to the write cache, and reopen the region later
+                    } else if (region.isModifiedFromLoad()) {
                         try {
                             region.save();
-                            region.close();
                         } catch (Exception e) {
                             logger.logWarning("Unable to save region at " + region.getLoc().asCoords(), e);
                         }
                     }
+                    region.close();
+                    IOFuture<Region> future = regionFutures.remove(region);
+                    if (future != null) {
+                        future.complete(region);
+                    }
                 }
             }
         }
 
         if (!performedAction) {
-            Sleep.sleep(10);
+            if (canLoadChunks) {
+                waitForWork();
+            }
             return canLoadChunks;
         }
         //Sleep.sleep(10);
         return true;
     }
 
-    public void addLoad(Vec3i loc) {
-        if (loc != null && !loadSet.contains(loc)) {
-            loadSet.add(loc);
-            loadQueue.add(loc);
+    /**
+     * Checks the presence index for a chunk.  If its region is not in the index yet, the region's header is read into the
+     * index, unless the region has no file at all.
+     *
+     * @return Return true if the chunk may have been saved, false if it has never been saved
+     */
+    private boolean isChunkSaved(Vec3i loc) {
+        ChunkPresenceIndex index = io.getPresenceIndex();
+        int presence = index.getPresence(loc.x, loc.y, loc.z);
+        if (presence == ChunkPresenceIndex.UNKNOWN) {
+            int x = CoordConverter.regionLocOfChunk(loc.x);
+            int y = CoordConverter.regionLocOfChunk(loc.y);
+            int z = CoordConverter.regionLocOfChunk(loc.z);
+            Region region = world.getRegion(x, y, z);
+            if (region == null && !SaveManager.getRegionFile(world.getName(), x, y, z).isFile()) {
+                index.setRegion(x, y, z, new BitSet());
+            } else {
+                if (region == null) {
+                    region = world.getOrLoadRegion(x, y, z);
+                }
+                index.setRegion(x, y, z, region.getChunkPresence());
+            }
+            presence = index.getPresence(loc.x, loc.y, loc.z);
         }
+        return presence == ChunkPresenceIndex.PRESENT;
     }
 
-    public void addSave(Chunk chunk) {
-        if (chunk != null && chunk.isModifiedFromLoad() && !saveSet.contains(chunk)) {
-            chunk.setModifiedFromLoad(false);
-            saveSet.add(chunk);
-            saveQueue.add(chunk);
+    /**
+     * Writes the chunks of one region from the write cache, then flushes the region once.
+     */
+    private void writeChunks(ChunkWriteCache.PendingRegion chunks) {
+        Chunk first = chunks.getChunks().get(0);
+        writeChunks(world.getOrLoadRegionChunkLoc(first.getXLoc(), first.getYLoc(), first.getZLoc()), chunks);
+    }
+
+    /**
+     * Appends the chunks that were saved since the last call to the journal, then syncs it once for all of them.
+     *
+     * @return Return true if any chunks were journaled
+     */
+    private boolean journalChunks() {
+        if (io.getJournal() == null) {
+            return false;
         }
+        List<Chunk> chunks = writeCache.pollUnjournaled();
+        if (chunks.isEmpty()) {
+            return false;
+        }
+        journalChunks(chunks);
+        return true;
     }
 
-    public void addRegion(Region region) {
-        if (region != null && !regionSet.contains(region)) {
-            regionSet.add(region);
-            regionQueue.add(region);
+    private void journalChunks(List<Chunk> chunks) {
+        ChunkJournal journal = io.getJournal();
+        if (journal == null) {
+            return;
+        }
+        BlockMap blockMap = world.getWorldSave().getWorldMeta().getBlockMap();
+        long position = 0;
+        for (Chunk chunk : chunks) {
+            journalBuffer.clear();
+            Region.encodeChunk(blockMap, chunk.snapshot(), journalCodec, journalBuffer);
+            journalBuffer.flip();
+            try {
+                io.journalBlockMap(); //any IDs the chunk was given, ahead of the chunk
+                position = journal.append(chunk.getXLoc(), chunk.getYLoc(), chunk.getZLoc(), journalBuffer);
+            } catch (IOException e) {
+                logger.logWarning("Unable to journal chunk at " + chunk.asCoords(), e); //still written to its region later
+            }
+        }
+        try {
+            journal.sync(position);
+        } catch (IOException e) {
+            logger.logWarning("Unable to sync journal!", e);
         }
     }
 
-    //--------Static Methods--------------
+    /**
+     * Writes chunks to their region, then forces it once.  The chunks only count as written, and their futures are only
+     * finished, once the region has been forced.  Chunks that fail are given back to the write cache to be journaled and
+     * written again, or, when shutting down, are journaled and kept in the journal for the next start.
+     */
+    private void writeChunks(Region region, ChunkWriteCache.PendingRegion chunks) {
+        List<Chunk> failed = new ArrayList<>();
+        Exception error = null;
+        for (Chunk chunk : chunks.getChunks()) {
+            try {
+                region.writeChunk(chunk);
+            } catch (Exception e) {
+                logger.logWarning("Unable to save chunk at " + chunk.asCoords(), e);
+                failed.add(chunk);
+                error = e;
+            }
+        }
+        try {
+            io.syncBlockMap(); //before the region is forced, as the chunks may use IDs that are not saved yet
+            region.save();
+        } catch (Exception e) {
+            logger.logWarning("Unable to save region at " + region.getLoc().asCoords(), e);
+            failed.clear();
+            failed.addAll(chunks.getChunks()); //none of them are known to be on the disk
+            error = e;
+        }
+        boolean retry = Boxle.instance().canRunIO();
+        if (!failed.isEmpty() && !retry) {
+            journalChunks(failed);
+        }
+        for (Chunk chunk : chunks.getChunks()) {
+            if (!failed.contains(chunk)) {
+                chunks.onWritten(chunk, null);
+            } else if (!retry) {
+                chunks.onWritten(chunk, error);
+            }
+        }
+        writeCache.finishWrite(chunks, failed, retry);
+        if (failed.isEmpty()) {
+            io.onChunksWritten();
+        }
+    }
 
+    private void waitForWork() {
+        synchronized (workLock) {
+            if (loadQueue.isEmpty() && regionQueue.isEmpty()) { //the write cache is checked again after IDLE_WAIT
+                try {
+                    workLock.wait(IDLE_WAIT);
+                } catch (InterruptedException ignored) {}
+            }
+        }
+    }
 
-    public static IOThread createThread(World world) {
-        IOThread thread = threadMap.get(world);
-        if (thread == null) {
-            threadMap.put(world, thread = new IOThread(world));
-            thread.start();
+    private void wake() {
+        synchronized (workLock) {
+            workLock.notify();
         }
-        return thread;
     }
 
+    /**
+     * Completes the future of a load.  Must only be called once the chunk is in the world: a request made before then
+     * still finds the future and shares it, and one made after finds the chunk, so neither loads the chunk again.
+     *
+     * @param loc   The location of the chunk
+     * @param chunk The loaded chunk
+     */
+    private void completeLoad(Vec3i loc, Chunk chunk) {
+        IOFuture<Chunk> future = loadFutures.remove(loc);
+        if (future != null) {
+            future.complete(chunk);
+        }
+    }
 
-    public static void waitForEnd() {
-        LOGGER_GLOBAL.logInfo("Saving chunks...");
-        Collection<IOThread> threads = threadMap.values();
-        boolean waiting = true;
-        while (waiting) {
-            waiting = false;
-            for (IOThread thread : threads) {
-                if (thread.isAlive()) {
-                    waiting = true;
+    private void failLoad(Vec3i loc, IOException e) {
+        IOFuture<Chunk> future = loadFutures.remove(loc);
+        if (future != null) {
+            future.fail(e);
+        }
+    }
+
+    void addLoad(Vec3i loc) {
+        if (loc != null && loadQueue.add(loc)) {
+            wake();
+        }
+    }
+
+    IOFuture<Chunk> loadAsync(Vec3i loc) {
+        IOFuture<Chunk> future = loadFutures.get(loc);
+        if (future == null) {
+            IOFuture<Chunk> newFuture = new IOFuture<>();
+            Vec3i key = loc.duplicate();
+            future = loadFutures.putIfAbsent(key, newFuture);
+            Chunk loaded;
+            if (future == null && (loaded = world.getChunks().getChunk(loc)) != null) { //already loaded
+                loadFutures.remove(key, newFuture);
+                newFuture.complete(loaded);
+                future = newFuture;
+            } else if (future == null) {
+                future = newFuture;
+                if (loadQueue.add(key)) {
+                    wake();
+                } else if (!loadQueue.contains(key)) { //out of range
+                    loadFutures.remove(key, newFuture);
+                    newFuture.cancel(false);
                 }
             }
-            Sleep.sleep(10);
         }
-        LOGGER_GLOBAL.logInfo("Chunks saved.");
+        return future;
+    }
+
+    void setLoadCenter(int x, int y, int z, int rangeH, int rangeV) {
+        for (Vec3i loc : loadQueue.setCenter(x, y, z, rangeH, rangeV)) {
+            IOFuture<Chunk> future = loadFutures.remove(loc);
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    ChunkLoadQueue getLoadQueue() {
+        return loadQueue;
+    }
+
+    ChunkWriteCache getWriteCache() {
+        return writeCache;
+    }
+
+    void addSave(Chunk chunk) {
+        if (chunk != null && chunk.isModifiedFromLoad()) {
+            chunk.setModifiedFromLoad(false);
+            io.getPresenceIndex().markSaved(chunk.getXLoc(), chunk.getYLoc(), chunk.getZLoc());
+            writeCache.add(chunk); //written later, with the rest of its region
+        }
+    }
+
+    IOFuture<Chunk> saveAsync(Chunk chunk) {
+        chunk.setModifiedFromLoad(false);
+        io.getPresenceIndex().markSaved(chunk.getXLoc(), chunk.getYLoc(), chunk.getZLoc());
+        return writeCache.addWithFuture(chunk);
+    }
+
+    IOFuture<Region> unloadRegionAsync(Region region) {
+        IOFuture<Region> newFuture = new IOFuture<>();
+        IOFuture<Region> future = regionFutures.putIfAbsent(region, newFuture);
+        if (future == null) {
+            future = newFuture;
+        }
+        addRegion(region);
+        return future;
+    }
+
+    void addRegion(Region region) {
+        if (region != null && !regionSet.contains(region)) {
+            regionSet.add(region);
+            regionQueue.add(region);
+            wake();
+        }
     }
 }
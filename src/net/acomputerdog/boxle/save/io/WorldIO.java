@@ -0,0 +1,432 @@
+package net.acomputerdog.boxle.save.io;
+
+import net.acomputerdog.boxle.main.Boxle;
+import net.acomputerdog.boxle.math.loc.CoordConverter;
+import net.acomputerdog.boxle.math.vec.Vec3i;
+import net.acomputerdog.boxle.save.SaveManager;
+import net.acomputerdog.boxle.save.util.BlockMap;
+import net.acomputerdog.boxle.save.world.files.ChunkJournal;
+import net.acomputerdog.boxle.save.world.files.ChunkPresenceIndex;
+import net.acomputerdog.boxle.save.world.files.Region;
+import net.acomputerdog.boxle.world.Chunk;
+import net.acomputerdog.boxle.world.World;
+import net.acomputerdog.core.java.Sleep;
+import net.acomputerdog.core.logger.CLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads and saves the chunks and regions of a world on a pool of IOThreads.  Requests are routed by region, so each
+ * region is only ever used by one worker, and a slow region does not hold up loads in other regions.  Saved chunks are
+ * kept durable in a ChunkJournal until they are written to their regions.
+ */
+public class WorldIO {
+    private static final Map<World, WorldIO> ioMap = new HashMap<>();
+    private static final CLogger LOGGER_GLOBAL = new CLogger("WorldIO", false, true);
+
+    private final World world;
+    private final IOThread[] workers;
+
+    /**
+     * Number of workers that have not stopped yet.  The last one to stop saves the world's metadata.
+     */
+    private final AtomicInteger runningWorkers;
+
+    /**
+     * The journal of saved chunks, or null if it could not be opened or replayed.
+     */
+    private volatile ChunkJournal journal;
+    private volatile boolean journalReplayed = false;
+
+    /**
+     * Held while saving or journaling block definitions, and before the journal's lock if both are needed.
+     */
+    private final Object metaLock = new Object();
+
+    /*
+     * Number of block file IDs whose definitions are saved in the world's metadata, and number whose definitions are
+     * saved there or in the journal.  Chunks are written with IDs that may not be saved yet, so the definitions must be
+     * made durable before the chunks are.  Only used while holding metaLock.
+     */
+    private int savedIds;
+    private int journaledIds;
+
+    private final ChunkPresenceIndex presenceIndex;
+
+    private WorldIO(World world, int numWorkers) {
+        this.world = world;
+        presenceIndex = new ChunkPresenceIndex(new File(SaveManager.getWorldDir(world.getName()), "chunks.index"));
+        presenceIndex.load();
+        File journalFile = new File(SaveManager.getWorldDir(world.getName()), "chunks.journal");
+        try {
+            journal = new ChunkJournal(journalFile);
+        } catch (IOException e) {
+            LOGGER_GLOBAL.logWarning("Unable to open journal " + journalFile.getPath() + ", saved chunks will not be journaled!", e);
+        }
+        workers = new IOThread[numWorkers];
+        runningWorkers = new AtomicInteger(numWorkers);
+        for (int index = 0; index < numWorkers; index++) {
+            workers[index] = new IOThread(this, index);
+        }
+    }
+
+    private void start() {
+        for (IOThread worker : workers) {
+            worker.start();
+        }
+    }
+
+    public void addLoad(Vec3i loc) {
+        if (loc != null) {
+            getWorkerForChunk(loc.x, loc.y, loc.z).addLoad(loc);
+        }
+    }
+
+    public void addSave(Chunk chunk) {
+        if (chunk != null) {
+            getWorkerForChunk(chunk.getXLoc(), chunk.getYLoc(), chunk.getZLoc()).addSave(chunk);
+        }
+    }
+
+    public void addRegion(Region region) {
+        if (region != null) {
+            Vec3i loc = region.getLoc();
+            getWorker(loc.x, loc.y, loc.z).addRegion(region);
+        }
+    }
+
+    /**
+     * Loads a chunk, or generates it if it has never been saved.  Requests for a chunk that is already being loaded share
+     * the same future.
+     *
+     * @param loc The location of the chunk
+     * @return Return a future that finishes when the chunk has been added to the world, or is cancelled if the load is
+     * out of range or the game shuts down first
+     */
+    public IOFuture<Chunk> loadAsync(Vec3i loc) {
+        return getWorkerForChunk(loc.x, loc.y, loc.z).loadAsync(loc);
+    }
+
+    /**
+     * Saves a chunk, whether or not it is modified.  The chunk is written with the rest of its region, so the future may
+     * take up to ChunkWriteCache.FLUSH_DELAY to finish.
+     *
+     * @param chunk The chunk to save
+     * @return Return a future that finishes when the chunk has been written
+     */
+    public IOFuture<Chunk> saveAsync(Chunk chunk) {
+        return getWorkerForChunk(chunk.getXLoc(), chunk.getYLoc(), chunk.getZLoc()).saveAsync(chunk);
+    }
+
+    /**
+     * Unloads a region, writing its waiting chunks first.
+     *
+     * @param region The region to unload
+     * @return Return a future that finishes when the region has been closed
+     */
+    public IOFuture<Region> unloadRegionAsync(Region region) {
+        Vec3i loc = region.getLoc();
+        return getWorker(loc.x, loc.y, loc.z).unloadRegionAsync(region);
+    }
+
+    /**
+     * Moves the center of the load queues, so that chunks nearest to it are loaded first.  Queued loads that are no
+     * longer within range are cancelled.
+     *
+     * @param center The chunk location of the center, usually the chunk containing the player
+     * @param rangeH Horizontal distance in chunks to keep loads within
+     * @param rangeV Vertical distance in chunks to keep loads within
+     */
+    public void setLoadCenter(Vec3i center, int rangeH, int rangeV) {
+        for (IOThread worker : workers) {
+            worker.setLoadCenter(center.x, center.y, center.z, rangeH, rangeV);
+        }
+    }
+
+    /**
+     * Gets the number of chunks waiting to be loaded.
+     *
+     * @return Return the number of queued loads
+     */
+    public int getNumQueuedLoads() {
+        int num = 0;
+        for (IOThread worker : workers) {
+            num += worker.getLoadQueue().size();
+        }
+        return num;
+    }
+
+    /**
+     * Gets the number of chunks waiting in the write caches of the workers.
+     *
+     * @return Return the number of chunks waiting to be written
+     */
+    public int getNumPendingSaves() {
+        int num = 0;
+        for (IOThread worker : workers) {
+            num += worker.getWriteCache().size();
+        }
+        return num;
+    }
+
+    /**
+     * Gets the number of loads that were cancelled because they were out of range.
+     *
+     * @return Return the number of cancelled loads
+     */
+    public long getNumCancelledLoads() {
+        long num = 0;
+        for (IOThread worker : workers) {
+            num += worker.getLoadQueue().getNumCancelled();
+        }
+        return num;
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    public int getNumWorkers() {
+        return workers.length;
+    }
+
+    private IOThread getWorkerForChunk(int x, int y, int z) {
+        return getWorker(CoordConverter.regionLocOfChunk(x), CoordConverter.regionLocOfChunk(y), CoordConverter.regionLocOfChunk(z));
+    }
+
+    /**
+     * Gets the worker that handles a region.
+     *
+     * @param x x-loc of the region
+     * @param y y-loc of the region
+     * @param z z-loc of the region
+     * @return Return the worker for the region
+     */
+    private IOThread getWorker(int x, int y, int z) {
+        int hash = (x * 73856093) ^ (y * 19349663) ^ (z * 83492791);
+        return workers[(hash & Integer.MAX_VALUE) % workers.length];
+    }
+
+    /**
+     * Called by each worker as it stops.
+     */
+    void onWorkerStopped() throws IOException {
+        if (runningWorkers.decrementAndGet() == 0) {
+            replayJournal(); //if no worker had any work, the journal of a crash must still reach the regions before it is reset
+            synchronized (metaLock) {
+                saveWorldMeta();
+            }
+            ChunkJournal journal = this.journal;
+            if (journal != null) {
+                onChunksWritten(); //every chunk has been written by now, so this empties the journal
+                journal.close();
+            }
+            presenceIndex.save();
+        }
+    }
+
+    public ChunkPresenceIndex getPresenceIndex() {
+        return presenceIndex;
+    }
+
+    ChunkJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Writes the chunks left in the journal by a crash to their regions, then empties it.  Called by each worker before
+     * its first load or save instead of when this WorldIO is created, as the world is still being created then.  Only the
+     * first call does anything, and the others wait for it.
+     */
+    synchronized void replayJournal() {
+        final ChunkJournal journal = this.journal;
+        if (journalReplayed) {
+            return;
+        }
+        journalReplayed = true;
+        synchronized (metaLock) {
+            savedIds = journaledIds = getBlockMap().getNumIds();
+        }
+        if (journal == null || journal.isEmpty()) {
+            return;
+        }
+        final Set<Region> regions = new HashSet<>();
+        try {
+            int numChunks = journal.replay(new ChunkJournal.ReplayHandler() {
+                @Override
+                public void replay(int x, int y, int z, ByteBuffer data) throws IOException {
+                    Region region = world.getOrLoadRegionChunkLoc(x, y, z);
+                    region.writeEncodedChunk(x, y, z, data);
+                    presenceIndex.markSaved(x, y, z);
+                    regions.add(region);
+                }
+
+                @Override
+                public void replayBlocks(int firstId, String[] definitions) throws IOException {
+                    getBlockMap().addDefinitions(firstId, definitions);
+                }
+            });
+            for (Region region : regions) {
+                region.save();
+            }
+            synchronized (metaLock) {
+                saveWorldMeta(); //the regions now use the journaled definitions
+                journal.reset();
+            }
+            LOGGER_GLOBAL.logInfo("Recovered " + numChunks + " chunks of world " + world.getName() + " from the journal.");
+        } catch (IOException e) {
+            LOGGER_GLOBAL.logError("Unable to replay journal " + journal.getFile().getPath() + "!  It will be kept for the next start, and saved chunks will not be journaled until then.", e);
+            this.journal = null;
+            try {
+                journal.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Called by a worker after it has written and forced chunks.  Empties the journal if no worker has chunks waiting.
+     */
+    void onChunksWritten() {
+        ChunkJournal journal = this.journal;
+        if (journal == null || !journalReplayed || journal.isEmpty()) { //chunks from before a crash are only in the journal until it is replayed
+            return;
+        }
+        synchronized (metaLock) {
+            synchronized (journal) { //blocks appends while checking
+                for (IOThread worker : workers) {
+                    if (!worker.getWriteCache().isClean()) {
+                        return;
+                    }
+                }
+                try {
+                    if (getBlockMap().getNumIds() > savedIds) {
+                        saveWorldMeta(); //the journal may hold the only copy of some definitions
+                    }
+                    journal.reset();
+                } catch (IOException e) {
+                    LOGGER_GLOBAL.logWarning("Unable to reset journal " + journal.getFile().getPath(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes the definitions of every block file ID assigned so far durable, by journaling the ones that are not saved
+     * yet, or by saving the world's metadata if there is no journal.  Called before forcing chunks that were encoded
+     * with those IDs.
+     *
+     * @throws IOException If the definitions cannot be journaled or saved
+     */
+    void syncBlockMap() throws IOException {
+        long position = journalBlockMap();
+        ChunkJournal journal = this.journal;
+        if (journal != null) {
+            if (position > 0) {
+                journal.sync(position);
+            }
+        } else {
+            synchronized (metaLock) {
+                if (getBlockMap().getNumIds() > savedIds) {
+                    saveWorldMeta();
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the definitions of the block file IDs that are neither saved nor journaled yet to the journal.  Called
+     * after encoding chunks and before appending them, so that the definitions come first.
+     *
+     * @return Return the position after the definitions, or 0 if nothing was appended
+     * @throws IOException If the definitions cannot be appended
+     */
+    long journalBlockMap() throws IOException {
+        ChunkJournal journal = this.journal;
+        if (journal == null) {
+            return 0;
+        }
+        synchronized (metaLock) {
+            BlockMap blockMap = getBlockMap();
+            int numIds = blockMap.getNumIds();
+            if (numIds <= journaledIds) {
+                return 0;
+            }
+            long position = journal.appendBlocks(journaledIds, blockMap.getDefinitions(journaledIds, numIds));
+            journaledIds = numIds;
+            return position;
+        }
+    }
+
+    /**
+     * Saves the world's metadata.  Must hold metaLock.
+     */
+    private void saveWorldMeta() throws IOException {
+        int numIds = getBlockMap().getNumIds();
+        world.getWorldSave().getWorldMeta().save();
+        savedIds = numIds;
+        journaledIds = Math.max(journaledIds, numIds);
+    }
+
+    private BlockMap getBlockMap() {
+        return world.getWorldSave().getWorldMeta().getBlockMap();
+    }
+
+    //--------Static Methods--------------
+
+    /**
+     * Gets the WorldIO of a world, creating it and starting its workers if it does not exist.
+     *
+     * @param world The world
+     * @return Return the WorldIO of the world
+     */
+    public static WorldIO createIO(World world) {
+        synchronized (ioMap) {
+            WorldIO io = ioMap.get(world);
+            if (io == null) {
+                ioMap.put(world, io = new WorldIO(world, getNumWorkers(Boxle.instance().getGameConfig().ioThreads)));
+                io.start();
+            }
+            return io;
+        }
+    }
+
+    /**
+     * Gets the number of workers to use for each world.
+     *
+     * @param configured The configured number of workers, or 0 to size the pool to the machine
+     * @return Return the number of workers
+     */
+    public static int getNumWorkers(int configured) {
+        if (configured > 0) {
+            return configured;
+        }
+        return Math.max(2, Runtime.getRuntime().availableProcessors() / 2); //leave room for the render and server threads
+    }
+
+    public static void waitForEnd() {
+        LOGGER_GLOBAL.logInfo("Saving chunks...");
+        List<IOThread> threads = new ArrayList<>();
+        synchronized (ioMap) {
+            for (WorldIO io : ioMap.values()) {
+                for (IOThread worker : io.workers) {
+                    threads.add(worker);
+                }
+            }
+        }
+        boolean waiting = true;
+        while (waiting) {
+            waiting = false;
+            for (IOThread thread : threads) {
+                if (thread.isAlive()) {
+                    waiting = true;
+                }
+            }
+            Sleep.sleep(10);
+        }
+        LOGGER_GLOBAL.logInfo("Chunks saved.");
+    }
+}
@@ -2,16 +2,38 @@ package net.acomputerdog.boxle.save.util;
 
 import net.acomputerdog.boxle.block.block.Block;
 import net.acomputerdog.boxle.block.block.Blocks;
+import net.acomputerdog.core.logger.CLogger;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
+/**
+ * Maps the block IDs saved in a world's regions (file IDs) to blocks.  File IDs are handed out from 0 as blocks are
+ * first saved and never change, while runtime IDs depend on the order blocks are registered in.
+ * <p>
+ * Both directions are kept as arrays indexed by ID, so chunks are converted by getRuntimeIds() and getFileIds() with
+ * one array lookup per block.  Blocks saved in the world that are no longer registered are loaded as air, but keep
+ * their definition so that they are saved again unchanged.
+ */
 public class BlockMap {
-    private final Map<Integer, Block> readBlockMap = new HashMap<>();
-    private final Map<Block, Integer> writeBlockMap = new HashMap<>();
+    private static final CLogger logger = new CLogger("BlockMap", false, true);
+
+    /**
+     * Definition of the block of each file ID.
+     */
+    private String[] definitions = new String[16];
+
+    /**
+     * File ID -> runtime ID.  Copied when it grows, so a returned table stays valid for every ID it had.
+     */
+    private int[] runtimeIds = new int[16];
+
+    /**
+     * Runtime ID -> file ID, or -1 if the block has no file ID yet.  Copied when it grows.
+     */
+    private int[] fileIds = createFileIds(Blocks.getNumBlocks());
 
     private int nextId = 0;
 
@@ -19,41 +41,143 @@ public class BlockMap {
 
     }
 
-    public int getIdForBlock(Block block) {
-        Integer id = writeBlockMap.get(block);
-        if (id == null) {
+    public synchronized int getIdForBlock(Block block) {
+        int runtimeId = block.getRuntimeId();
+        if (runtimeId >= fileIds.length) {
+            int[] newFileIds = createFileIds(Math.max(runtimeId + 1, Blocks.getNumBlocks()));
+            System.arraycopy(fileIds, 0, newFileIds, 0, fileIds.length);
+            fileIds = newFileIds;
+        }
+        int id = fileIds[runtimeId];
+        if (id < 0) {
             id = nextId;
-            writeBlockMap.put(block, id);
-            readBlockMap.put(id, block);
+            if (id == definitions.length) {
+                definitions = Arrays.copyOf(definitions, id * 2);
+                runtimeIds = Arrays.copyOf(runtimeIds, id * 2);
+            }
+            definitions[id] = block.getDefinition();
+            runtimeIds[id] = runtimeId;
+            fileIds[runtimeId] = id;
             nextId++;
         }
         return id;
     }
 
-    public Block getBlockForId(int id) {
-        return readBlockMap.get(id);
+    public synchronized Block getBlockForId(int id) {
+        return id >= 0 && id < nextId ? Blocks.getBlock(runtimeIds[id]) : null;
     }
 
-    public void load(DataInput in) throws IOException {
-        readBlockMap.clear();
-        writeBlockMap.clear();
+    /**
+     * Gets the table to convert file IDs to runtime IDs.  Blocks that are not registered are converted to air.
+     *
+     * @return Return the table, indexed by file ID.  Must not be modified.  Only valid for IDs below getNumIds().
+     */
+    public synchronized int[] getRuntimeIds() {
+        return runtimeIds;
+    }
+
+    /**
+     * Gets the table to convert runtime IDs to file IDs.  Blocks that do not have a file ID yet must be passed to
+     * getIdForBlock(), after which the table must be fetched again.
+     *
+     * @return Return the table, indexed by runtime ID, holding -1 for blocks without a file ID.  Must not be modified.
+     * May be shorter than the number of registered blocks.
+     */
+    public synchronized int[] getFileIds() {
+        return fileIds;
+    }
+
+    public synchronized int getNumIds() {
+        return nextId;
+    }
+
+    /**
+     * Gets the definitions of a run of file IDs, to save them somewhere other than the world's metadata.
+     *
+     * @param from The first file ID
+     * @param to   The file ID after the last, at most getNumIds()
+     * @return Return the definitions, by file ID from from
+     */
+    public synchronized String[] getDefinitions(int from, int to) {
+        return Arrays.copyOfRange(definitions, from, Math.min(to, nextId));
+    }
+
+    /**
+     * Adds the definitions of a run of file IDs that were saved somewhere other than the world's metadata.  IDs that
+     * are already defined must have the same definition.
+     *
+     * @param firstId        The file ID of the first definition, at most getNumIds()
+     * @param newDefinitions The definitions, by file ID from firstId
+     * @throws IOException If a definition does not match, or the run does not follow on from the defined IDs
+     */
+    public synchronized void addDefinitions(int firstId, String[] newDefinitions) throws IOException {
+        if (firstId < 0 || firstId > nextId) {
+            throw new IOException("Block IDs from " + firstId + " do not follow on from the " + nextId + " defined IDs!");
+        }
+        for (int index = 0; index < newDefinitions.length; index++) {
+            int id = firstId + index;
+            if (id < nextId) {
+                if (!definitions[id].equals(newDefinitions[index])) {
+                    throw new IOException("Block ID " + id + " is already defined as " + definitions[id] + ", not " + newDefinitions[index] + "!");
+                }
+            } else {
+                if (id == definitions.length) {
+                    definitions = Arrays.copyOf(definitions, id * 2);
+                    runtimeIds = Arrays.copyOf(runtimeIds, id * 2);
+                }
+                if (fileIds.length < Blocks.getNumBlocks()) {
+                    int[] newFileIds = createFileIds(Blocks.getNumBlocks());
+                    System.arraycopy(fileIds, 0, newFileIds, 0, fileIds.length);
+                    fileIds = newFileIds;
+                }
+                define(id, newDefinitions[index], definitions, runtimeIds, fileIds);
+                nextId++;
+            }
+        }
+    }
+
+    public synchronized void load(DataInput in) throws IOException {
         int numIds = in.readInt();
+        if (numIds < 0) {
+            throw new IOException("Block map is corrupt!");
+        }
+        String[] newDefinitions = new String[Math.max(16, numIds)];
+        int[] newRuntimeIds = new int[newDefinitions.length];
+        int[] newFileIds = createFileIds(Blocks.getNumBlocks());
         for (int id = 0; id < numIds; id++) {
-            Block block = Blocks.BLOCKS.getFromDef(in.readUTF());
-            readBlockMap.put(id, block);
-            writeBlockMap.put(block, id);
+            define(id, in.readUTF(), newDefinitions, newRuntimeIds, newFileIds);
         }
+        definitions = newDefinitions;
+        runtimeIds = newRuntimeIds;
+        fileIds = newFileIds;
         nextId = numIds;
     }
 
-    public void save(DataOutput out) throws IOException {
-        int numIds = readBlockMap.size();
-        out.writeInt(numIds);
-        for (int id = 0; id < numIds; id++) {
-            out.writeUTF(readBlockMap.get(id).getDefinition());
+    public synchronized void save(DataOutput out) throws IOException {
+        out.writeInt(nextId);
+        for (int id = 0; id < nextId; id++) {
+            out.writeUTF(definitions[id]);
+        }
+    }
+
+    private static void define(int id, String definition, String[] definitions, int[] runtimeIds, int[] fileIds) {
+        Block block = Blocks.BLOCKS.getFromDef(definition);
+        definitions[id] = definition;
+        if (block == null) {
+            logger.logWarning("No block for definition: " + definition + "!  Air will be loaded instead.");
+            runtimeIds[id] = Blocks.air.getRuntimeId();
+        } else {
+            runtimeIds[id] = block.getRuntimeId();
+            fileIds[block.getRuntimeId()] = id;
         }
     }
 
+    private static int[] createFileIds(int size) {
+        int[] ids = new int[Math.max(16, size)];
+        Arrays.fill(ids, -1);
+        return ids;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -61,19 +185,22 @@ public class BlockMap {
 
         BlockMap blockMap = (BlockMap) o;
 
-        return readBlockMap.equals(blockMap.readBlockMap);
+        return Arrays.equals(getDefinitions(), blockMap.getDefinitions());
     }
 
     @Override
     public int hashCode() {
-        return readBlockMap.hashCode();
+        return Arrays.hashCode(getDefinitions());
     }
 
     @Override
     public String toString() {
         return "BlockMap{" +
-                "readBlockMap=" + readBlockMap +
-                ", writeBlockMap=" + writeBlockMap +
+                "definitions=" + Arrays.toString(getDefinitions()) +
                 '}';
     }
+
+    private synchronized String[] getDefinitions() {
+        return Arrays.copyOf(definitions, nextId);
+    }
 }
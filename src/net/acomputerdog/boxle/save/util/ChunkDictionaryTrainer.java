@@ -0,0 +1,175 @@
+package net.acomputerdog.boxle.save.util;
+
+import net.acomputerdog.boxle.save.world.files.CompressionCodecs;
+import net.acomputerdog.core.logger.CLogger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+
+/**
+ * Builds the preset dictionary of CompressionCodecs.DEFLATE_DICTIONARY from the chunks of saved worlds.
+ * <p>
+ * Every run of K bytes is scored by the number of chunks it appears in.  The dictionary is then filled greedily with the
+ * SEGMENT_SIZE byte pieces of chunks whose runs have the highest total score, not counting runs already in the
+ * dictionary, so that it holds as much common content as possible without repeating itself.  Deflate finds nearer
+ * matches with shorter codes, so the best pieces are placed at the end.
+ * <p>
+ * Run with the directory of the worlds to learn from, the file to write, and optionally the size of the dictionary.  A
+ * dictionary that is shipped must never change, as chunks written with it can only be read with it: put a new one in a
+ * new resource with a new codec ID.
+ */
+public class ChunkDictionaryTrainer {
+    private static final CLogger LOGGER = new CLogger("ChunkDictionaryTrainer", false, true);
+
+    public static final int DEFAULT_SIZE = 16 * 1024;
+
+    private static final int MAX_CHUNKS = 20000;
+
+    private static final int K = 6;
+    private static final int SEGMENT_SIZE = 32;
+    private static final int SEGMENT_STEP = 8;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            LOGGER.logInfo("Usage: ChunkDictionaryTrainer <world directory> <output file> [size]");
+            return;
+        }
+        int size = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SIZE;
+        List<byte[]> chunks = SavedChunks.read(new File(args[0]), MAX_CHUNKS);
+        byte[] dictionary = train(chunks, size);
+        OutputStream out = new FileOutputStream(args[1]);
+        try {
+            out.write(dictionary);
+        } finally {
+            out.close();
+        }
+        LOGGER.logInfo("Wrote a " + dictionary.length + " byte dictionary to " + args[1] + ", ship it as " + CompressionCodecs.DICTIONARY_RESOURCE + " only if that does not exist yet.");
+    }
+
+    /**
+     * Builds a dictionary.
+     *
+     * @param chunks The encoded chunks to learn from
+     * @param size   The largest size of the dictionary, at most 32 KiB to fit in the deflate window
+     * @return Return the dictionary
+     */
+    public static byte[] train(List<byte[]> chunks, int size) {
+        Map<Long, int[]> scores = countRuns(chunks);
+
+        PriorityQueue<Segment> queue = new PriorityQueue<>();
+        for (byte[] chunk : chunks) {
+            for (int start = 0; start == 0 || start + SEGMENT_SIZE <= chunk.length; start += SEGMENT_STEP) {
+                Segment segment = new Segment(chunk, start, Math.min(SEGMENT_SIZE, chunk.length));
+                segment.score = score(segment, scores);
+                if (segment.score > 0) {
+                    queue.add(segment);
+                }
+            }
+        }
+
+        List<Segment> picked = new ArrayList<>();
+        int length = 0;
+        while (!queue.isEmpty() && length < size) {
+            Segment segment = queue.poll();
+            long score = score(segment, scores); //lower if some of its runs were picked since it was scored
+            if (score <= 0) {
+                continue;
+            }
+            if (score < segment.score && !queue.isEmpty() && score < queue.peek().score) {
+                segment.score = score;
+                queue.add(segment);
+                continue;
+            }
+            for (int pos = segment.start; pos + K <= segment.start + segment.length; pos++) {
+                int[] runScore = scores.get(pack(segment.chunk, pos));
+                if (runScore != null) {
+                    runScore[0] = 0;
+                }
+            }
+            picked.add(segment);
+            length += segment.length;
+        }
+
+        byte[] dictionary = new byte[Math.min(length, size)];
+        int end = dictionary.length;
+        for (Segment segment : picked) { //best last
+            int copy = Math.min(segment.length, end);
+            System.arraycopy(segment.chunk, segment.start + segment.length - copy, dictionary, end - copy, copy);
+            end -= copy;
+            if (end == 0) {
+                break;
+            }
+        }
+        LOGGER.logInfo("Built dictionary from " + picked.size() + " pieces of " + chunks.size() + " chunks.");
+        return dictionary;
+    }
+
+    /**
+     * Counts the number of chunks that each run of K bytes appears in.  Runs that only appear in one chunk are left out.
+     */
+    private static Map<Long, int[]> countRuns(List<byte[]> chunks) {
+        Map<Long, int[]> counts = new HashMap<>();
+        Set<Long> seen = new HashSet<>();
+        for (byte[] chunk : chunks) {
+            seen.clear();
+            for (int pos = 0; pos + K <= chunk.length; pos++) {
+                Long key = pack(chunk, pos);
+                if (seen.add(key)) {
+                    int[] count = counts.get(key);
+                    if (count == null) {
+                        counts.put(key, count = new int[1]);
+                    }
+                    count[0]++;
+                }
+            }
+        }
+        for (Iterator<int[]> it = counts.values().iterator(); it.hasNext(); ) {
+            if (it.next()[0] < 2) {
+                it.remove();
+            }
+        }
+        return counts;
+    }
+
+    private static long score(Segment segment, Map<Long, int[]> scores) {
+        long score = 0;
+        Set<Long> counted = new HashSet<>();
+        for (int pos = segment.start; pos + K <= segment.start + segment.length; pos++) {
+            Long key = pack(segment.chunk, pos);
+            int[] runScore = scores.get(key);
+            if (runScore != null && counted.add(key)) {
+                score += runScore[0];
+            }
+        }
+        return score;
+    }
+
+    private static long pack(byte[] data, int pos) {
+        long key = 0;
+        for (int index = 0; index < K; index++) {
+            key = (key << 8) | (data[pos + index] & 0xFF);
+        }
+        return key;
+    }
+
+    private static class Segment implements Comparable<Segment> {
+        private final byte[] chunk;
+        private final int start;
+        private final int length;
+        private long score;
+
+        private Segment(byte[] chunk, int start, int length) {
+            this.chunk = chunk;
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public int compareTo(Segment o) {
+            return Long.compare(o.score, score); //highest score first
+        }
+    }
+}
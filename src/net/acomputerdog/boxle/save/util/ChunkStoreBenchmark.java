@@ -0,0 +1,121 @@
+package net.acomputerdog.boxle.save.util;
+
+import net.acomputerdog.boxle.save.world.files.ChunkCodec;
+import net.acomputerdog.boxle.save.world.files.ChunkStore;
+import net.acomputerdog.boxle.save.world.files.MappedChunkStore;
+import net.acomputerdog.boxle.save.world.files.SectorChunkStore;
+import net.acomputerdog.core.logger.CLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Microbenchmark of the compressed (SectorChunkStore) and uncompressed memory-mapped (MappedChunkStore) region
+ * formats.  Fills a region-sized store with terrain-like chunks encoded the same way as Region encodes them, then reads
+ * every chunk back, and reports the time per chunk and the size of each file.
+ * <p>
+ * Run with an optional directory to write the test files to (defaults to the temp directory).
+ */
+public class ChunkStoreBenchmark {
+    private static final CLogger LOGGER = new CLogger("ChunkStoreBenchmark", false, true);
+
+    private static final int NUM_CHUNKS = 1000;
+    private static final int CHUNK_SIZE = 16;
+    private static final int CHUNK_VOLUME = CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE;
+
+    private static final int WARMUP_PASSES = 3;
+    private static final int PASSES = 10;
+
+    public static void main(String[] args) throws IOException {
+        File dir = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"));
+        byte[][] chunks = createChunks();
+        long encodedSize = 0;
+        for (byte[] chunk : chunks) {
+            encodedSize += chunk.length;
+        }
+        LOGGER.logInfo(String.format("Average encoded chunk: %d bytes", encodedSize / NUM_CHUNKS));
+        run("Compressed (sectors)", new File(dir, "benchmark_sectors.region"), false, chunks);
+        run("Uncompressed (mapped)", new File(dir, "benchmark_mapped.region"), true, chunks);
+    }
+
+    private static void run(String name, File file, boolean mapped, byte[][] chunks) throws IOException {
+        long writeTime = 0;
+        long readTime = 0;
+        long checksum = 0;
+        long fileSize = 0;
+        for (int pass = 0; pass < WARMUP_PASSES + PASSES; pass++) {
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Unable to delete " + file.getPath());
+            }
+            ChunkStore store = mapped ? new MappedChunkStore(file, NUM_CHUNKS, ChunkCodec.MAX_LENGTH) : new SectorChunkStore(file, NUM_CHUNKS, ChunkCodec.MAX_LENGTH);
+            try {
+                long start = System.nanoTime();
+                for (int index = 0; index < NUM_CHUNKS; index++) {
+                    ByteBuffer data = store.startWrite(index);
+                    data.put(chunks[index]);
+                    store.finishWrite(index, data);
+                }
+                long write = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                long sum = 0;
+                int[] ids = new int[CHUNK_VOLUME];
+                byte[] heightMap = new byte[CHUNK_SIZE * CHUNK_SIZE];
+                for (int index = 0; index < NUM_CHUNKS; index++) {
+                    ChunkCodec.decode(store.read(index), ids, heightMap);
+                    sum += ids[index % CHUNK_VOLUME];
+                }
+                long read = System.nanoTime() - start;
+
+                if (pass >= WARMUP_PASSES) {
+                    writeTime += write;
+                    readTime += read;
+                    checksum += sum;
+                }
+                store.force();
+            } finally {
+                store.close();
+            }
+            fileSize = file.length();
+        }
+        long numChunks = (long) PASSES * NUM_CHUNKS;
+        LOGGER.logInfo(String.format("%-22s write %8.2f us/chunk, read %8.2f us/chunk, file %6d KiB (checksum %d)", name, (double) writeTime / numChunks / 1000d, (double) readTime / numChunks / 1000d, fileSize / 1024, checksum));
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Creates chunks that look like generated terrain: stone with scattered ores, a grass layer at a varying height, and
+     * air above.  Encoded with ChunkCodec, like Region does.
+     */
+    static byte[][] createChunks() {
+        Random random = new Random(0);
+        ChunkCodec codec = new ChunkCodec();
+        ByteBuffer data = ByteBuffer.allocate(ChunkCodec.MAX_LENGTH);
+        int[] ids = new int[CHUNK_VOLUME];
+        byte[] heightMap = new byte[CHUNK_SIZE * CHUNK_SIZE];
+        byte[][] chunks = new byte[NUM_CHUNKS][];
+        for (int index = 0; index < NUM_CHUNKS; index++) {
+            int ground = random.nextInt(CHUNK_SIZE * 2) - (CHUNK_SIZE / 2); //some chunks are all stone or all air
+            for (int block = 0; block < CHUNK_VOLUME; block++) {
+                int y = block & (CHUNK_SIZE - 1); //blocks are in Chunk.getBlockIndex() order
+                if (y < ground) {
+                    ids[block] = random.nextInt(32) == 0 ? 3 + random.nextInt(4) : 1;
+                } else if (y == ground) {
+                    ids[block] = 2;
+                } else {
+                    ids[block] = 0;
+                }
+            }
+            Arrays.fill(heightMap, (byte) Math.max(-1, Math.min(CHUNK_SIZE - 1, ground)));
+            data.clear();
+            codec.encode(ids, heightMap, data);
+            chunks[index] = Arrays.copyOf(data.array(), data.position());
+        }
+        return chunks;
+    }
+}
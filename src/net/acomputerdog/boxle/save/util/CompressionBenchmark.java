@@ -0,0 +1,108 @@
+package net.acomputerdog.boxle.save.util;
+
+import net.acomputerdog.boxle.save.world.files.ChunkCodec;
+import net.acomputerdog.boxle.save.world.files.CompressionCodec;
+import net.acomputerdog.boxle.save.world.files.CompressionCodecs;
+import net.acomputerdog.boxle.save.world.files.SectorFile;
+import net.acomputerdog.core.logger.CLogger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Benchmark of the chunk CompressionCodecs.  Compresses and decompresses every chunk on its own, as SectorChunkStore
+ * does, and reports the compression ratio (including the codec ID stored with each chunk), the speed in MB/s of encoded
+ * chunk data, and the size of the chunks both compressed and rounded up to the sectors they take in a region file, so
+ * that a codec can be picked for each deployment with the region_compression config option.
+ * <p>
+ * Run with the directory of a saved world (or of several worlds) to use its chunks, or with no arguments to use the
+ * terrain-like chunks of ChunkStoreBenchmark.  The dictionary scores best on the worlds it was trained on, so test it on
+ * other worlds.
+ */
+public class CompressionBenchmark {
+    private static final CLogger LOGGER = new CLogger("CompressionBenchmark", false, true);
+
+    private static final int MAX_CHUNKS = 10000;
+
+    private static final int WARMUP_PASSES = 3;
+    private static final int PASSES = 10;
+
+    public static void main(String[] args) throws IOException {
+        byte[][] chunks;
+        if (args.length > 0) {
+            List<byte[]> saved = SavedChunks.read(new File(args[0]), MAX_CHUNKS);
+            if (saved.isEmpty()) {
+                LOGGER.logWarning("No chunks found in " + args[0]);
+                return;
+            }
+            chunks = saved.toArray(new byte[saved.size()][]);
+        } else {
+            chunks = ChunkStoreBenchmark.createChunks();
+        }
+        long rawSize = 0;
+        for (byte[] chunk : chunks) {
+            rawSize += chunk.length;
+        }
+        LOGGER.logInfo(String.format("%d chunks, average encoded chunk: %d bytes", chunks.length, rawSize / chunks.length));
+        run(CompressionCodecs.NONE, 0, chunks, rawSize);
+        run(CompressionCodecs.LZ4, 0, chunks, rawSize);
+        for (int level : new int[]{1, 6, 9}) {
+            run(CompressionCodecs.DEFLATE, level, chunks, rawSize);
+        }
+        for (int level : new int[]{1, 6, 9}) {
+            run(CompressionCodecs.DEFLATE_DICTIONARY, level, chunks, rawSize);
+        }
+    }
+
+    private static void run(int id, int level, byte[][] chunks, long rawSize) throws IOException {
+        String name = CompressionCodecs.getName(id) + (id == CompressionCodecs.DEFLATE || id == CompressionCodecs.DEFLATE_DICTIONARY ? " " + level : "");
+        CompressionCodec codec;
+        try {
+            codec = CompressionCodecs.create(id, level);
+        } catch (IOException e) {
+            LOGGER.logWarning("Skipping " + name + ": " + e.getMessage());
+            return;
+        }
+        try {
+            byte[][] compressed = new byte[chunks.length][];
+            byte[] buffer = new byte[codec.getMaxCompressedLength(ChunkCodec.MAX_LENGTH)];
+            byte[] decompressed = new byte[ChunkCodec.MAX_LENGTH];
+            long compressTime = 0;
+            long decompressTime = 0;
+            long compressedSize = 0;
+            long diskSize = 0;
+            for (int pass = 0; pass < WARMUP_PASSES + PASSES; pass++) {
+                long start = System.nanoTime();
+                for (int index = 0; index < chunks.length; index++) {
+                    int length = codec.compress(chunks[index], chunks[index].length, buffer, 0);
+                    if (pass == 0) {
+                        compressed[index] = Arrays.copyOf(buffer, length);
+                        compressedSize += length + 1;
+                        diskSize += SectorFile.getDiskSize(length + 1);
+                    }
+                }
+                long compress = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int index = 0; index < chunks.length; index++) {
+                    int length = codec.decompress(compressed[index], 0, compressed[index].length, decompressed);
+                    if (pass == 0 && (length != chunks[index].length || !Arrays.equals(Arrays.copyOf(decompressed, length), chunks[index]))) {
+                        throw new IOException(name + " did not decompress chunk " + index + " correctly!");
+                    }
+                }
+                long decompress = System.nanoTime() - start;
+
+                if (pass >= WARMUP_PASSES) {
+                    compressTime += compress;
+                    decompressTime += decompress;
+                }
+            }
+            double megabytes = (double) rawSize * PASSES / (1024d * 1024d);
+            LOGGER.logInfo(String.format("%-20s ratio %6.2f, compress %8.1f MB/s, decompress %8.1f MB/s, %7d KiB, on disk %7d KiB", name, (double) rawSize / compressedSize, megabytes / (compressTime / 1000000000d), megabytes / (decompressTime / 1000000000d), compressedSize / 1024, diskSize / 1024));
+        } finally {
+            codec.close();
+        }
+    }
+}
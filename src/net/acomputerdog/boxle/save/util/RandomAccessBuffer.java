@@ -5,75 +5,95 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * A growable, seekable buffer of bytes, stored in large heap segments.  Values are big-endian, like DataOutput.
+ * <p>
+ * Arrays of bytes and ints are copied in bulk (System.arraycopy, IntBuffer views) a segment at a time, and streams are
+ * read and written a segment at a time, so loading or saving a region does not cost a call per byte.
+ */
 public class RandomAccessBuffer {
-    private static final int DEFAULT_CAPACITY = 1;
-    private static final int BUFFER_SECTION_SIZE = 256;
+    private static final int SEGMENT_SHIFT = 16;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT; // 64 KiB
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
 
-    private final List<ByteBuffer> buffers = new ArrayList<>();
+    private final List<byte[]> segments = new ArrayList<>();
 
-    private final ByteBuffer intConvertBuf = ByteBuffer.allocate(4);
-    private final ByteBuffer longConvertBuf = ByteBuffer.allocate(8);
+    private long position = 0;
 
-    private ByteBuffer activeBuffer;
-    private int bufferIndex = 0;
-    private int bufferPosition = 0;
-    private long capacity = 0;
+    /**
+     * The end of the data: the furthest point that has been written to or seeked to.
+     */
+    private long length = 0;
 
     public RandomAccessBuffer() {
-        this(DEFAULT_CAPACITY);
+        this(SEGMENT_SIZE);
     }
 
+    /**
+     * Creates a buffer.
+     *
+     * @param initialSize The number of bytes to allocate up front
+     */
     public RandomAccessBuffer(long initialSize) {
-        if (initialSize < 1) {
-            initialSize = 1;
-        }
-        expand(initialSize);
-        seek(0);
+        ensureCapacity(Math.max(initialSize, 1));
     }
 
-    //--------------------------Control Methods-----------ss------------------
+    //--------------------------Control Methods-----------------------------
 
     public void save(OutputStream out) throws IOException {
-        for (ByteBuffer buffer : buffers) {
-            for (int index = 0; index < BUFFER_SECTION_SIZE; index++) {
-                out.write(buffer.get(index));
-            }
+        long remaining = length;
+        for (int index = 0; remaining > 0; index++) {
+            int count = (int) Math.min(remaining, SEGMENT_SIZE);
+            out.write(segments.get(index), 0, count);
+            remaining -= count;
         }
     }
 
+    /**
+     * Replaces the contents of this buffer with everything left in a stream, and seeks to the start.
+     *
+     * @param in The stream to read
+     * @throws IOException If the stream cannot be read
+     */
     public void load(InputStream in) throws IOException {
         clear();
-        while (in.available() > 0) {
-            writeByte(in.read());
+        while (true) {
+            byte[] segment = segmentAt(position);
+            int offset = (int) (position & SEGMENT_MASK);
+            int read = in.read(segment, offset, SEGMENT_SIZE - offset);
+            if (read < 0) {
+                break;
+            }
+            position += read;
         }
+        length = position;
         seek(0);
     }
 
     public void seek(long location) {
-        if (location >= capacity) {
-            expand(location);
+        if (location < 0) {
+            throw new IllegalArgumentException("Location cannot be negative: " + location);
+        }
+        if (location > length) {
+            ensureCapacity(location);
+            length = location;
         }
-        bufferIndex = (int) Math.floor((double) location / (double) BUFFER_SECTION_SIZE);
-        bufferPosition = (int) (location % BUFFER_SECTION_SIZE);
-        activeBuffer = buffers.get(bufferIndex);
+        position = location;
     }
 
     public long length() {
-        return capacity;
+        return length;
     }
 
     public long position() {
-        return (bufferIndex * BUFFER_SECTION_SIZE) + bufferPosition;
+        return position;
     }
 
     public void clear() {
-        bufferIndex = 0;
-        bufferPosition = 0;
-        capacity = 0;
-        activeBuffer = null;
-        buffers.clear();
-        expand(1);
-        seek(0);
+        segments.clear();
+        position = 0;
+        length = 0;
+        ensureCapacity(1);
     }
 
     //--------------------------Read Methods---------------------------
@@ -83,8 +103,18 @@ public class RandomAccessBuffer {
     }
 
     public byte[] readBytes(byte[] bytes) {
-        for (int index = 0; index < bytes.length; index++) {
-            bytes[index] = readByte();
+        return readBytes(bytes, 0, bytes.length);
+    }
+
+    public byte[] readBytes(byte[] bytes, int offset, int count) {
+        ensureCapacity(position + count);
+        while (count > 0) {
+            int segOffset = (int) (position & SEGMENT_MASK);
+            int num = Math.min(count, SEGMENT_SIZE - segOffset);
+            System.arraycopy(segments.get((int) (position >>> SEGMENT_SHIFT)), segOffset, bytes, offset, num);
+            position += num;
+            offset += num;
+            count -= num;
         }
         return bytes;
     }
@@ -99,8 +129,8 @@ public class RandomAccessBuffer {
     }
 
     public byte readByte() {
-        byte b = activeBuffer.get(bufferPosition);
-        incrementBufferPos();
+        byte b = segmentAt(position)[(int) (position & SEGMENT_MASK)];
+        position++;
         return b;
     }
 
@@ -109,8 +139,19 @@ public class RandomAccessBuffer {
     }
 
     public int[] readInts(int[] ints) {
-        for (int index = 0; index < ints.length; index++) {
-            ints[index] = readInt();
+        ensureCapacity(position + ints.length * 4L);
+        int index = 0;
+        while (index < ints.length) {
+            int segOffset = (int) (position & SEGMENT_MASK);
+            int num = Math.min(ints.length - index, (SEGMENT_SIZE - segOffset) / 4);
+            if (num > 0) {
+                ByteBuffer.wrap(segments.get((int) (position >>> SEGMENT_SHIFT)), segOffset, num * 4).asIntBuffer().get(ints, index, num);
+                position += num * 4;
+                index += num;
+            } else {
+                ints[index] = readInt(); //int crosses into the next segment
+                index++;
+            }
         }
         return ints;
     }
@@ -125,10 +166,13 @@ public class RandomAccessBuffer {
     }
 
     public int readInt() {
-        intConvertBuf.rewind();
-        intConvertBuf.put(readBytes(4));
-        intConvertBuf.rewind();
-        return intConvertBuf.getInt();
+        int segOffset = (int) (position & SEGMENT_MASK);
+        if (segOffset <= SEGMENT_SIZE - 4) {
+            byte[] segment = segmentAt(position);
+            position += 4;
+            return ((segment[segOffset] & 0xFF) << 24) | ((segment[segOffset + 1] & 0xFF) << 16) | ((segment[segOffset + 2] & 0xFF) << 8) | (segment[segOffset + 3] & 0xFF);
+        }
+        return ((readByte() & 0xFF) << 24) | ((readByte() & 0xFF) << 16) | ((readByte() & 0xFF) << 8) | (readByte() & 0xFF);
     }
 
 
@@ -177,10 +221,7 @@ public class RandomAccessBuffer {
     }
 
     public long readLong() {
-        longConvertBuf.rewind();
-        longConvertBuf.put(readBytes(8));
-        longConvertBuf.rewind();
-        return longConvertBuf.getLong();
+        return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
     }
 
     public char[] readChars(int length) {
@@ -313,18 +354,30 @@ public class RandomAccessBuffer {
     }
 
     public void writeBytes(byte[] bytes) {
-        for (byte b : bytes) {
-            writeByte(b);
+        writeBytes(bytes, 0, bytes.length);
+    }
+
+    public void writeBytes(byte[] bytes, int offset, int count) {
+        ensureCapacity(position + count);
+        while (count > 0) {
+            int segOffset = (int) (position & SEGMENT_MASK);
+            int num = Math.min(count, SEGMENT_SIZE - segOffset);
+            System.arraycopy(bytes, offset, segments.get((int) (position >>> SEGMENT_SHIFT)), segOffset, num);
+            position += num;
+            offset += num;
+            count -= num;
         }
+        updateLength();
     }
 
     public void writeByte(byte b) {
-        activeBuffer.put(bufferPosition, b);
-        incrementBufferPos();
+        segmentAt(position)[(int) (position & SEGMENT_MASK)] = b;
+        position++;
+        updateLength();
     }
 
     public void writeByte(int b) {
-        writeByte((byte) (b % 255));
+        writeByte((byte) b);
     }
 
     public void writeInts(List<Integer> ints) {
@@ -334,16 +387,39 @@ public class RandomAccessBuffer {
     }
 
     public void writeInts(int[] ints) {
-        for (int i : ints) {
-            writeInt(i);
+        ensureCapacity(position + ints.length * 4L);
+        int index = 0;
+        while (index < ints.length) {
+            int segOffset = (int) (position & SEGMENT_MASK);
+            int num = Math.min(ints.length - index, (SEGMENT_SIZE - segOffset) / 4);
+            if (num > 0) {
+                ByteBuffer.wrap(segments.get((int) (position >>> SEGMENT_SHIFT)), segOffset, num * 4).asIntBuffer().put(ints, index, num);
+                position += num * 4;
+                index += num;
+            } else {
+                writeInt(ints[index]); //int crosses into the next segment
+                index++;
+            }
         }
+        updateLength();
     }
 
     public void writeInt(int i) {
-        intConvertBuf.rewind();
-        intConvertBuf.putInt(i);
-        intConvertBuf.rewind();
-        writeBytes(intConvertBuf.array());
+        int segOffset = (int) (position & SEGMENT_MASK);
+        if (segOffset <= SEGMENT_SIZE - 4) {
+            byte[] segment = segmentAt(position);
+            segment[segOffset] = (byte) (i >>> 24);
+            segment[segOffset + 1] = (byte) (i >>> 16);
+            segment[segOffset + 2] = (byte) (i >>> 8);
+            segment[segOffset + 3] = (byte) i;
+            position += 4;
+            updateLength();
+        } else {
+            writeByte((byte) (i >>> 24));
+            writeByte((byte) (i >>> 16));
+            writeByte((byte) (i >>> 8));
+            writeByte((byte) i);
+        }
     }
 
     public void writeLongs(List<Long> longs) {
@@ -359,10 +435,8 @@ public class RandomAccessBuffer {
     }
 
     public void writeLong(long l) {
-        longConvertBuf.rewind();
-        longConvertBuf.putLong(l);
-        longConvertBuf.rewind();
-        writeBytes(longConvertBuf.array());
+        writeInt((int) (l >>> 32));
+        writeInt((int) l);
     }
 
     public void writeShorts(List<Integer> shorts) {
@@ -467,28 +541,30 @@ public class RandomAccessBuffer {
 
     //---------------Internal Methods------------------------------
 
-    private void incrementBufferPos() {
-        bufferPosition++;
-        if (bufferPosition >= BUFFER_SECTION_SIZE) {
-            seek((bufferIndex * BUFFER_SECTION_SIZE) + bufferPosition);
+    private void updateLength() {
+        if (position > length) {
+            length = position;
         }
     }
 
-    private void expand(long size) {
-        if (size > capacity) {
-            long neededSpace = size - capacity;
-            long numBuffers = (long) Math.ceil((double) neededSpace / (double) BUFFER_SECTION_SIZE);
-            int index = 0;
-            while (index < numBuffers) {
-                buffers.add(newByteBuf());
-                index++;
-            }
-            capacity = size;
+    /**
+     * Gets the segment holding a location, allocating it if needed.
+     */
+    private byte[] segmentAt(long location) {
+        int index = (int) (location >>> SEGMENT_SHIFT);
+        while (segments.size() <= index) {
+            segments.add(new byte[SEGMENT_SIZE]);
         }
+        return segments.get(index);
     }
 
-    private static ByteBuffer newByteBuf() {
-        return ByteBuffer.allocateDirect(BUFFER_SECTION_SIZE);
+    /**
+     * Allocates segments up to (but not including) a location.
+     */
+    private void ensureCapacity(long end) {
+        if (end > 0) {
+            segmentAt(end - 1);
+        }
     }
 
     public static void main(String[] args) throws IOException {
@@ -0,0 +1,190 @@
+package net.acomputerdog.boxle.save.util;
+
+import net.acomputerdog.core.logger.CLogger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Microbenchmark of RandomAccessBuffer against the implementation it replaced (kept below as LegacyBuffer): 256-byte
+ * direct sections, streams copied one byte at a time, and ints assembled through a conversion buffer.  Times loading a
+ * region-sized stream, reading it back as ints, writing it as ints, and saving it.
+ */
+public class RandomAccessBufferBenchmark {
+    private static final CLogger LOGGER = new CLogger("RABenchmark", false, true);
+
+    /**
+     * Size of an old-format region: 1000 chunk slots and 1000 heightmap slots.
+     */
+    private static final int DATA_SIZE = 1000 * ((16 * 16 * 16 * 4) + 4) + 1000 * ((16 * 16) + 4);
+    private static final int NUM_INTS = DATA_SIZE / 4;
+
+    private static final int WARMUP_PASSES = 2;
+    private static final int PASSES = 5;
+
+    public static void main(String[] args) throws IOException {
+        byte[] data = new byte[DATA_SIZE];
+        new Random(0).nextBytes(data);
+        int[] ints = new int[NUM_INTS];
+        OutputStream sink = new OutputStream() {
+            @Override
+            public void write(int b) {}
+
+            @Override
+            public void write(byte[] b, int off, int len) {}
+        };
+
+        long[] times = new long[4];
+        long[] legacyTimes = new long[4];
+        for (int pass = 0; pass < WARMUP_PASSES + PASSES; pass++) {
+            boolean measure = pass >= WARMUP_PASSES;
+
+            RandomAccessBuffer rab = new RandomAccessBuffer();
+            long start = System.nanoTime();
+            rab.load(new ByteArrayInputStream(data));
+            long load = System.nanoTime() - start;
+            start = System.nanoTime();
+            rab.readInts(ints);
+            long read = System.nanoTime() - start;
+            rab.seek(0);
+            start = System.nanoTime();
+            rab.writeInts(ints);
+            long write = System.nanoTime() - start;
+            start = System.nanoTime();
+            rab.save(sink);
+            long save = System.nanoTime() - start;
+            if (measure) {
+                times[0] += load;
+                times[1] += read;
+                times[2] += write;
+                times[3] += save;
+            }
+
+            LegacyBuffer legacy = new LegacyBuffer();
+            start = System.nanoTime();
+            legacy.load(new ByteArrayInputStream(data));
+            load = System.nanoTime() - start;
+            start = System.nanoTime();
+            legacy.readInts(ints);
+            read = System.nanoTime() - start;
+            legacy.seek(0);
+            start = System.nanoTime();
+            legacy.writeInts(ints);
+            write = System.nanoTime() - start;
+            start = System.nanoTime();
+            legacy.save(sink);
+            save = System.nanoTime() - start;
+            if (measure) {
+                legacyTimes[0] += load;
+                legacyTimes[1] += read;
+                legacyTimes[2] += write;
+                legacyTimes[3] += save;
+            }
+        }
+        LOGGER.logInfo(String.format("%d KiB, average of %d passes:", DATA_SIZE / 1024, PASSES));
+        String[] names = {"load", "readInts", "writeInts", "save"};
+        for (int index = 0; index < names.length; index++) {
+            LOGGER.logInfo(String.format("%-10s legacy %9.2f ms, current %7.2f ms", names[index], legacyTimes[index] / (PASSES * 1000000d), times[index] / (PASSES * 1000000d)));
+        }
+    }
+
+    /**
+     * The parts of the old RandomAccessBuffer that are measured, unchanged.
+     */
+    private static class LegacyBuffer {
+        private static final int BUFFER_SECTION_SIZE = 256;
+
+        private final List<ByteBuffer> buffers = new ArrayList<>();
+        private final ByteBuffer intConvertBuf = ByteBuffer.allocate(4);
+
+        private ByteBuffer activeBuffer;
+        private int bufferIndex = 0;
+        private int bufferPosition = 0;
+        private long capacity = 0;
+
+        private LegacyBuffer() {
+            expand(1);
+            seek(0);
+        }
+
+        private void save(OutputStream out) throws IOException {
+            for (ByteBuffer buffer : buffers) {
+                for (int index = 0; index < BUFFER_SECTION_SIZE; index++) {
+                    out.write(buffer.get(index));
+                }
+            }
+        }
+
+        private void load(InputStream in) throws IOException {
+            while (in.available() > 0) {
+                writeByte((byte) (in.read() % 255));
+            }
+            seek(0);
+        }
+
+        private void seek(long location) {
+            if (location >= capacity) {
+                expand(location);
+            }
+            bufferIndex = (int) Math.floor((double) location / (double) BUFFER_SECTION_SIZE);
+            bufferPosition = (int) (location % BUFFER_SECTION_SIZE);
+            activeBuffer = buffers.get(bufferIndex);
+        }
+
+        private void readInts(int[] ints) {
+            for (int index = 0; index < ints.length; index++) {
+                intConvertBuf.rewind();
+                for (int b = 0; b < 4; b++) {
+                    intConvertBuf.put(readByte());
+                }
+                intConvertBuf.rewind();
+                ints[index] = intConvertBuf.getInt();
+            }
+        }
+
+        private void writeInts(int[] ints) {
+            for (int i : ints) {
+                intConvertBuf.rewind();
+                intConvertBuf.putInt(i);
+                intConvertBuf.rewind();
+                for (byte b : intConvertBuf.array()) {
+                    writeByte(b);
+                }
+            }
+        }
+
+        private byte readByte() {
+            byte b = activeBuffer.get(bufferPosition);
+            incrementBufferPos();
+            return b;
+        }
+
+        private void writeByte(byte b) {
+            activeBuffer.put(bufferPosition, b);
+            incrementBufferPos();
+        }
+
+        private void incrementBufferPos() {
+            bufferPosition++;
+            if (bufferPosition >= BUFFER_SECTION_SIZE) {
+                seek((bufferIndex * BUFFER_SECTION_SIZE) + bufferPosition);
+            }
+        }
+
+        private void expand(long size) {
+            if (size > capacity) {
+                long numBuffers = (long) Math.ceil((double) (size - capacity) / (double) BUFFER_SECTION_SIZE);
+                for (int index = 0; index < numBuffers; index++) {
+                    buffers.add(ByteBuffer.allocateDirect(BUFFER_SECTION_SIZE));
+                }
+                capacity = size;
+            }
+        }
+    }
+}
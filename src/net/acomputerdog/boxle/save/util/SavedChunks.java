@@ -0,0 +1,100 @@
+package net.acomputerdog.boxle.save.util;
+
+import net.acomputerdog.boxle.save.world.files.*;
+import net.acomputerdog.core.logger.CLogger;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the encoded chunks saved in the region files of a world, for tools that need real chunks to work with.  Only
+ * regions in the sector or mapped formats are read; old regions must be opened by the game once to convert them.
+ */
+public class SavedChunks {
+    private static final CLogger LOGGER = new CLogger("SavedChunks", false, true);
+
+    /**
+     * Reads the encoded chunks of a world, or of several worlds.
+     *
+     * @param dir       A world directory, a regions directory, or a directory of worlds
+     * @param maxChunks The most chunks to read
+     * @return Return the chunks as encoded by ChunkCodec, uncompressed
+     * @throws IOException If a region cannot be read
+     */
+    public static List<byte[]> read(File dir, int maxChunks) throws IOException {
+        List<File> files = new ArrayList<>();
+        findRegions(dir, files);
+        List<byte[]> chunks = new ArrayList<>();
+        for (File file : files) {
+            if (chunks.size() >= maxChunks) {
+                break;
+            }
+            readRegion(file, chunks, maxChunks);
+        }
+        LOGGER.logInfo("Read " + chunks.size() + " chunks from " + files.size() + " regions in " + dir.getPath());
+        return chunks;
+    }
+
+    private static void findRegions(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        Arrays.sort(children);
+        for (File child : children) {
+            if (child.isDirectory()) {
+                findRegions(child, files);
+            } else if (child.getName().endsWith(".region")) {
+                files.add(child);
+            }
+        }
+    }
+
+    private static void readRegion(File file, List<byte[]> chunks, int maxChunks) throws IOException {
+        ChunkStore store;
+        int magic = readMagic(file);
+        if (SectorFile.isSectorFile(magic)) {
+            store = new SectorChunkStore(file, Region.CHUNKS_PER_REGION, ChunkCodec.MAX_LENGTH);
+        } else if (magic == MappedChunkStore.MAGIC) {
+            store = new MappedChunkStore(file, Region.CHUNKS_PER_REGION, ChunkCodec.MAX_LENGTH);
+        } else {
+            LOGGER.logWarning("Skipping region in an old format: " + file.getPath());
+            return;
+        }
+        try {
+            for (int index = 0; index < Region.CHUNKS_PER_REGION && chunks.size() < maxChunks; index++) {
+                ByteBuffer data = store.read(index);
+                if (data != null) {
+                    byte[] chunk = new byte[data.remaining()];
+                    data.get(chunk);
+                    chunks.add(chunk);
+                }
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    private static int readMagic(File file) throws IOException {
+        if (file.length() < 4) {
+            return 0;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            return in.readInt();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package net.acomputerdog.boxle.save.world;
 
+import net.acomputerdog.boxle.config.GameConfig;
 import net.acomputerdog.boxle.main.Boxle;
 import net.acomputerdog.boxle.math.vec.VecPool;
 import net.acomputerdog.boxle.save.SaveManager;
+import net.acomputerdog.boxle.save.world.files.CompressionCodecs;
 import net.acomputerdog.boxle.save.world.files.Region;
 import net.acomputerdog.boxle.save.world.files.WorldMetaFile;
 import net.acomputerdog.boxle.world.Chunk;
@@ -10,13 +12,10 @@ import net.acomputerdog.boxle.world.World;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListSet;
 
 public class WorldSave {
     private final String worldName;
 
-    private final Set<Region> openRegions = new ConcurrentSkipListSet<>();
     private World world;
     private WorldMetaFile worldMeta;
 
@@ -40,10 +39,9 @@ public class WorldSave {
                 SaveManager.saveChunkDelayed(chunk);
             }
         }
-        for (Region region : openRegions) {
+        for (Region region : world.getRegionCache().getRegions()) {
             SaveManager.unloadRegion(region);
         }
-        openRegions.clear();
     }
 
     public World createWorld() {
@@ -56,8 +54,7 @@ public class WorldSave {
 
     public Region getRegion(int x, int y, int z) {
         File regFile = SaveManager.getRegionFile(worldName, x, y, z);
-        Region region = new Region(getWorldMeta(), regFile, VecPool.getVec3i(x, y, z));
-        openRegions.add(region);
-        return region;
+        GameConfig config = Boxle.instance().getGameConfig();
+        return new Region(getWorldMeta(), regFile, VecPool.getVec3i(x, y, z), config.uncompressedRegions, CompressionCodecs.getId(config.regionCompression), config.regionCompressionLevel);
     }
 }
@@ -0,0 +1,218 @@
+package net.acomputerdog.boxle.save.world.files;
+
+import net.acomputerdog.boxle.world.Chunk;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes the blocks of a chunk (as BlockMap IDs) and its heightmap for a region file.
+ * <p>
+ * Current format (VERSION_PALETTE):
+ * <ul>
+ * <li>version byte, flags byte (FLAG_HEIGHTMAP)</li>
+ * <li>palette: varint size, then one varint BlockMap ID per entry, in order of first use</li>
+ * <li>runs: pairs of varint palette index and varint length, covering all blocks in Chunk.getBlockIndex() order, so
+ * runs go along y and continue into the next column</li>
+ * <li>heightmap (if flagged): one byte per column</li>
+ * </ul>
+ * Chunks that are too varied for the palette format to be smaller are written as VERSION_INTS: version byte, flags byte,
+ * then every BlockMap ID as an int in Chunk.getBlockIndex() order.  The heightmap is left out to stay within MAX_LENGTH.
+ * <p>
+ * The first format (VERSION_RAW) is only read.  It has no header: every BlockMap ID as an int in y, x, z order, then an
+ * optional heightmap.  Its first byte is the high byte of an ID, which is always 0 as IDs are handed out from 0.
+ */
+public class ChunkCodec {
+    public static final byte VERSION_RAW = 0;
+    public static final byte VERSION_PALETTE = 1;
+    public static final byte VERSION_INTS = 2;
+
+    private static final int FLAG_HEIGHTMAP = 1;
+
+    private static final int BLOCK_DATA_SIZE = Chunk.CHUNK_VOLUME * 4;
+    private static final int HEIGHTMAP_SIZE = Chunk.CHUNK_SIZE * Chunk.CHUNK_SIZE;
+
+    /**
+     * The largest encoded chunk, in bytes.
+     */
+    public static final int MAX_LENGTH = BLOCK_DATA_SIZE + HEIGHTMAP_SIZE;
+
+    /*
+     * Scratch space for encode(), reused between chunks.
+     */
+    private final int[] palette = new int[Chunk.CHUNK_VOLUME];
+    private final int[] runIndexes = new int[Chunk.CHUNK_VOLUME];
+    private final int[] runLengths = new int[Chunk.CHUNK_VOLUME];
+
+    /**
+     * Encodes a chunk.
+     *
+     * @param ids       BlockMap IDs of the blocks, in Chunk.getBlockIndex() order
+     * @param heightMap The heightmap of the chunk
+     * @param out       The buffer to write to, with at least MAX_LENGTH bytes remaining
+     */
+    public void encode(int[] ids, byte[] heightMap, ByteBuffer out) {
+        int paletteSize = 0;
+        int numRuns = 0;
+        int size = 2; // version + flags
+        int runStart = 0;
+        int paletteIndex = -1;
+        int lastId = 0;
+        for (int index = 0; index <= ids.length; index++) {
+            if (index < ids.length && index > 0 && ids[index] == lastId) {
+                continue;
+            }
+            if (index > 0) {
+                runIndexes[numRuns] = paletteIndex;
+                runLengths[numRuns] = index - runStart;
+                size += varIntSize(paletteIndex) + varIntSize(index - runStart);
+                numRuns++;
+            }
+            if (index < ids.length) {
+                lastId = ids[index];
+                runStart = index;
+                paletteIndex = findPaletteIndex(lastId, paletteSize);
+                if (paletteIndex == paletteSize) {
+                    palette[paletteSize] = lastId;
+                    paletteSize++;
+                    size += varIntSize(lastId);
+                }
+            }
+        }
+        size += varIntSize(paletteSize) + HEIGHTMAP_SIZE;
+
+        if (size > BLOCK_DATA_SIZE + 2) {
+            out.put(VERSION_INTS);
+            out.put((byte) 0);
+            for (int id : ids) {
+                out.putInt(id);
+            }
+            return;
+        }
+        out.put(VERSION_PALETTE);
+        out.put((byte) FLAG_HEIGHTMAP);
+        writeVarInt(out, paletteSize);
+        for (int index = 0; index < paletteSize; index++) {
+            writeVarInt(out, palette[index]);
+        }
+        for (int run = 0; run < numRuns; run++) {
+            writeVarInt(out, runIndexes[run]);
+            writeVarInt(out, runLengths[run]);
+        }
+        out.put(heightMap, 0, HEIGHTMAP_SIZE);
+    }
+
+    /**
+     * Decodes a chunk in any format.
+     *
+     * @param in        A buffer holding exactly one encoded chunk between its position and limit
+     * @param ids       The array to write BlockMap IDs to, in Chunk.getBlockIndex() order
+     * @param heightMap The array to write the heightmap to
+     * @return Return true if the chunk had a heightmap, false if it must be rebuilt
+     * @throws IOException If the chunk is invalid
+     */
+    public static boolean decode(ByteBuffer in, int[] ids, byte[] heightMap) throws IOException {
+        try {
+            int length = in.remaining();
+            byte version = in.get(in.position());
+            if (version == VERSION_RAW) {
+                return decodeRaw(in, length, ids, heightMap);
+            }
+            if (version != VERSION_PALETTE && version != VERSION_INTS) {
+                throw new IOException("Unknown chunk format: " + version);
+            }
+            in.get();
+            int flags = in.get();
+            if (version == VERSION_INTS) {
+                for (int index = 0; index < Chunk.CHUNK_VOLUME; index++) {
+                    ids[index] = in.getInt();
+                }
+                return false;
+            }
+            int paletteSize = readVarInt(in);
+            if (paletteSize <= 0 || paletteSize > Chunk.CHUNK_VOLUME) {
+                throw new IOException("Invalid palette size: " + paletteSize);
+            }
+            int[] palette = new int[paletteSize];
+            for (int index = 0; index < paletteSize; index++) {
+                palette[index] = readVarInt(in);
+            }
+            int index = 0;
+            while (index < Chunk.CHUNK_VOLUME) {
+                int paletteIndex = readVarInt(in);
+                int runLength = readVarInt(in);
+                if (paletteIndex < 0 || paletteIndex >= paletteSize || runLength <= 0 || runLength > Chunk.CHUNK_VOLUME - index) {
+                    throw new IOException("Invalid run at block " + index + "!");
+                }
+                int id = palette[paletteIndex];
+                for (int end = index + runLength; index < end; index++) {
+                    ids[index] = id;
+                }
+            }
+            if ((flags & FLAG_HEIGHTMAP) != 0) {
+                in.get(heightMap, 0, HEIGHTMAP_SIZE);
+                return true;
+            }
+            return false;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Chunk data is truncated!", e);
+        }
+    }
+
+    private static boolean decodeRaw(ByteBuffer in, int length, int[] ids, byte[] heightMap) throws IOException {
+        if (length != BLOCK_DATA_SIZE && length != MAX_LENGTH) {
+            throw new IOException("Invalid chunk length: " + length);
+        }
+        for (int y = 0; y < Chunk.CHUNK_SIZE; y++) {
+            for (int x = 0; x < Chunk.CHUNK_SIZE; x++) {
+                for (int z = 0; z < Chunk.CHUNK_SIZE; z++) {
+                    ids[Chunk.getBlockIndex(x, y, z)] = in.getInt();
+                }
+            }
+        }
+        if (length == MAX_LENGTH) {
+            in.get(heightMap, 0, HEIGHTMAP_SIZE);
+            return true;
+        }
+        return false;
+    }
+
+    private int findPaletteIndex(int id, int paletteSize) {
+        for (int index = 0; index < paletteSize; index++) {
+            if (palette[index] == id) {
+                return index;
+            }
+        }
+        return paletteSize;
+    }
+
+    private static void writeVarInt(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int readVarInt(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint is too long!");
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,316 @@
+package net.acomputerdog.boxle.save.world.files;
+
+import net.acomputerdog.core.logger.CLogger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of saved chunks for one world.  A chunk is appended here as soon as it is saved, so that it survives a
+ * crash while it waits to be written to its region.  Appends are made durable by sync(), which forces every append made
+ * so far at once, so threads that sync at the same time share one force.  Once every appended chunk has been written to
+ * its region, the journal is reset.  If the game crashes first, replay() writes the journaled chunks to their regions.
+ * <p>
+ * Layout: magic int, then records of (length int, chunk x int, chunk y int, chunk z int, CRC32 int, encoded chunk).  The
+ * CRC covers the location and the chunk, so a record torn by a crash ends the replay.  Chunks are encoded with the file
+ * IDs of the world's BlockMap, so the definitions of IDs that are not saved in the world's metadata yet are journaled as
+ * well, ahead of the chunks that use them.  These records have a negative length (minus the size of the definitions),
+ * the first ID in place of the x-loc and the number of IDs in place of the y-loc, followed by the definitions as UTF
+ * strings.
+ * <p>
+ * Thread-safe.
+ */
+public class ChunkJournal {
+    private static final CLogger logger = new CLogger("Chunk_Journal", false, true);
+
+    /**
+     * "BXJ1"
+     */
+    public static final int MAGIC = 0x42584A31;
+
+    /**
+     * Size at which the journal should be emptied by writing out every waiting chunk, in bytes.
+     */
+    public static final long MAX_SIZE = 64L * 1024L * 1024L;
+
+    private static final int HEADER_SIZE = 4;
+    private static final int RECORD_HEADER_SIZE = 20;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+
+    private final ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Position after the last append.
+     */
+    private long end;
+
+    /**
+     * Position up to which appends are known to be on the disk.  Only changed while holding syncLock.
+     */
+    private volatile long syncedTo;
+
+    private final Object syncLock = new Object();
+
+    /**
+     * Opens a journal, creating it if it does not exist.  Existing records are kept until reset() is called.
+     *
+     * @param file The file to open
+     * @throws IOException If the file cannot be opened or is not a journal
+     */
+    public ChunkJournal(File file) throws IOException {
+        this.file = file;
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        try {
+            if (channel.size() < HEADER_SIZE) {
+                end = writeHeader();
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                readFully(header, 0);
+                if (header.getInt(0) != MAGIC) {
+                    throw new IOException("Not a chunk journal: " + file.getPath());
+                }
+                end = channel.size();
+            }
+            syncedTo = end;
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a chunk.  The chunk is not durable until sync() is called with the returned position.
+     *
+     * @param x    x-loc of the chunk
+     * @param y    y-loc of the chunk
+     * @param z    z-loc of the chunk
+     * @param data The encoded chunk, between its position and limit.  Must be backed by an array.
+     * @return Return the position after the record
+     * @throws IOException If the chunk cannot be appended
+     */
+    public synchronized long append(int x, int y, int z, ByteBuffer data) throws IOException {
+        int length = data.remaining();
+        recordHeader.clear();
+        recordHeader.putInt(length).putInt(x).putInt(y).putInt(z);
+        crc.reset();
+        crc.update(recordHeader.array(), 4, 12);
+        crc.update(data.array(), data.arrayOffset() + data.position(), length);
+        recordHeader.putInt((int) crc.getValue());
+        recordHeader.flip();
+        writeFully(recordHeader, end);
+        writeFully(data.duplicate(), end + RECORD_HEADER_SIZE);
+        end += RECORD_HEADER_SIZE + length;
+        return end;
+    }
+
+    /**
+     * Appends the definitions of a run of block file IDs.  They are not durable until sync() is called with the returned
+     * position.
+     *
+     * @param firstId     The file ID of the first definition
+     * @param definitions The definitions, by file ID from firstId
+     * @return Return the position after the records
+     * @throws IOException If the definitions cannot be appended
+     */
+    public synchronized long appendBlocks(int firstId, String[] definitions) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int start = 0;
+        for (int index = 0; index < definitions.length; index++) {
+            int size = bytes.size();
+            out.writeUTF(definitions[index]);
+            if (bytes.size() > ChunkCodec.MAX_LENGTH && index > start) { //too big for one record, so end it before this one
+                appendBlocksRecord(firstId + start, index - start, bytes.toByteArray(), size);
+                bytes.reset();
+                out.writeUTF(definitions[index]);
+                start = index;
+            }
+        }
+        if (start < definitions.length) {
+            appendBlocksRecord(firstId + start, definitions.length - start, bytes.toByteArray(), bytes.size());
+        }
+        return end;
+    }
+
+    private void appendBlocksRecord(int firstId, int numIds, byte[] data, int length) throws IOException {
+        recordHeader.clear();
+        recordHeader.putInt(-length).putInt(firstId).putInt(numIds).putInt(0);
+        crc.reset();
+        crc.update(recordHeader.array(), 4, 12);
+        crc.update(data, 0, length);
+        recordHeader.putInt((int) crc.getValue());
+        recordHeader.flip();
+        writeFully(recordHeader, end);
+        writeFully(ByteBuffer.wrap(data, 0, length), end + RECORD_HEADER_SIZE);
+        end += RECORD_HEADER_SIZE + length;
+    }
+
+    /**
+     * Makes every append up to a position durable.  If another thread is already forcing the journal, this waits for it
+     * and only forces again if that did not cover the position.
+     *
+     * @param position The position returned by append()
+     * @throws IOException If the journal cannot be forced
+     */
+    public void sync(long position) throws IOException {
+        if (syncedTo >= position) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (syncedTo >= position) {
+                return;
+            }
+            long target;
+            synchronized (this) {
+                target = end;
+            }
+            channel.force(false);
+            syncedTo = target;
+        }
+    }
+
+    /**
+     * Reads every complete record, in the order they were appended.  Reading stops at the first torn or corrupt record.
+     *
+     * @param handler The handler to pass the chunks and block definitions to
+     * @return Return the number of chunks read
+     * @throws IOException If the journal cannot be read, or the handler throws an IOException
+     */
+    public synchronized int replay(ReplayHandler handler) throws IOException {
+        long position = HEADER_SIZE;
+        int numChunks = 0;
+        ByteBuffer data = ByteBuffer.allocate(ChunkCodec.MAX_LENGTH);
+        while (position + RECORD_HEADER_SIZE <= end) {
+            recordHeader.clear();
+            readFully(recordHeader, position);
+            int length = Math.abs(recordHeader.getInt(0));
+            if (length == 0 || length > ChunkCodec.MAX_LENGTH || position + RECORD_HEADER_SIZE + length > end) {
+                logger.logWarning("Journal " + file.getPath() + " ends with an incomplete record, it will be ignored.");
+                break;
+            }
+            data.clear().limit(length);
+            readFully(data, position + RECORD_HEADER_SIZE);
+            data.flip();
+            crc.reset();
+            crc.update(recordHeader.array(), 4, 12);
+            crc.update(data.array(), 0, length);
+            if ((int) crc.getValue() != recordHeader.getInt(16)) {
+                logger.logWarning("Journal " + file.getPath() + " has a corrupt record, it and any after it will be ignored.");
+                break;
+            }
+            if (recordHeader.getInt(0) < 0) {
+                handler.replayBlocks(recordHeader.getInt(4), readDefinitions(data, recordHeader.getInt(8)));
+            } else {
+                handler.replay(recordHeader.getInt(4), recordHeader.getInt(8), recordHeader.getInt(12), data);
+                numChunks++;
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        return numChunks;
+    }
+
+    /**
+     * Empties the journal.  Only call once every appended chunk has been written to its region and forced, and every
+     * appended block definition has been saved in the world's metadata.
+     *
+     * @throws IOException If the journal cannot be truncated
+     */
+    public synchronized void reset() throws IOException {
+        if (end == HEADER_SIZE) {
+            return;
+        }
+        channel.truncate(HEADER_SIZE);
+        channel.force(false);
+        end = HEADER_SIZE;
+        syncedTo = end;
+    }
+
+    public synchronized long size() {
+        return end;
+    }
+
+    public synchronized boolean isFull() {
+        return end >= MAX_SIZE;
+    }
+
+    public synchronized boolean isEmpty() {
+        return end == HEADER_SIZE;
+    }
+
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    private long writeHeader() throws IOException {
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).flip();
+        writeFully(header, 0);
+        channel.force(false);
+        return HEADER_SIZE;
+    }
+
+    private String[] readDefinitions(ByteBuffer data, int numIds) throws IOException {
+        if (numIds < 0) {
+            throw new IOException("Journal " + file.getPath() + " has a corrupt block definition record!");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data.array(), 0, data.limit()));
+        String[] definitions = new String[numIds];
+        for (int index = 0; index < numIds; index++) {
+            definitions[index] = in.readUTF();
+        }
+        return definitions;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of " + file.getPath() + "!");
+            }
+            position += read;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Receives the chunks and block definitions read by replay().
+     */
+    public interface ReplayHandler {
+        /**
+         * Called for each journaled chunk.
+         *
+         * @param x    x-loc of the chunk
+         * @param y    y-loc of the chunk
+         * @param z    z-loc of the chunk
+         * @param data The encoded chunk, between its position and limit.  Only valid until this method returns.
+         * @throws IOException If the chunk cannot be written
+         */
+        public void replay(int x, int y, int z, ByteBuffer data) throws IOException;
+
+        /**
+         * Called for each run of journaled block definitions, before any chunk that uses them.
+         *
+         * @param firstId     The file ID of the first definition
+         * @param definitions The definitions, by file ID from firstId
+         * @throws IOException If the definitions do not match the world's BlockMap
+         */
+        public void replayBlocks(int firstId, String[] definitions) throws IOException;
+    }
+}
@@ -0,0 +1,188 @@
+package net.acomputerdog.boxle.save.world.files;
+
+import net.acomputerdog.boxle.math.loc.CoordConverter;
+import net.acomputerdog.boxle.world.structure.ChunkMap;
+import net.acomputerdog.core.logger.CLogger;
+
+import java.io.*;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers which chunks of a world have ever been saved, one bit per chunk slot of each region, so that a chunk that
+ * was never saved can be generated without opening its region.
+ * <p>
+ * A region is unknown until its presence is read from its file with setRegion().  Chunks saved in an unknown region are
+ * still remembered, so a region can be known to have a chunk before its file does.  The index is saved on shutdown and
+ * deleted when it is loaded, so after a crash every region is unknown again rather than out of date.
+ * <p>
+ * Layout: magic int, region count int, then for each region: x int, y int, z int, and the presence bits as
+ * REGION_LONGS longs.
+ * <p>
+ * Thread-safe.
+ */
+public class ChunkPresenceIndex {
+    private static final CLogger logger = new CLogger("Chunk_Index", false, true);
+
+    /**
+     * "BXP1"
+     */
+    public static final int MAGIC = 0x42585031;
+
+    public static final int ABSENT = 0;
+    public static final int PRESENT = 1;
+    public static final int UNKNOWN = 2;
+
+    private static final int REGION_LONGS = (Region.CHUNKS_PER_REGION + 63) / 64;
+
+    private final File file;
+    private final Map<Long, Entry> regions = new HashMap<>();
+
+    public ChunkPresenceIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Checks if a chunk has been saved.
+     *
+     * @param x x-loc of the chunk
+     * @param y y-loc of the chunk
+     * @param z z-loc of the chunk
+     * @return Return PRESENT, ABSENT, or UNKNOWN if the region must be checked
+     */
+    public synchronized int getPresence(int x, int y, int z) {
+        Entry entry = regions.get(ChunkMap.pack(CoordConverter.regionLocOfChunk(x), CoordConverter.regionLocOfChunk(y), CoordConverter.regionLocOfChunk(z)));
+        if (entry == null) {
+            return UNKNOWN;
+        }
+        if (entry.present.get(Region.getChunkSlot(x, y, z))) {
+            return PRESENT;
+        }
+        return entry.isKnown ? ABSENT : UNKNOWN;
+    }
+
+    /**
+     * Records that a chunk has been saved.  Call before it is written, so that it is never reported missing while it waits.
+     *
+     * @param x x-loc of the chunk
+     * @param y y-loc of the chunk
+     * @param z z-loc of the chunk
+     */
+    public synchronized void markSaved(int x, int y, int z) {
+        getEntry(CoordConverter.regionLocOfChunk(x), CoordConverter.regionLocOfChunk(y), CoordConverter.regionLocOfChunk(z)).present.set(Region.getChunkSlot(x, y, z));
+    }
+
+    /**
+     * Records which chunks a region file holds, making the region known.
+     *
+     * @param x       x-loc of the region
+     * @param y       y-loc of the region
+     * @param z       z-loc of the region
+     * @param present The chunk slots that hold a chunk, or an empty set if the region has no file
+     */
+    public synchronized void setRegion(int x, int y, int z, BitSet present) {
+        Entry entry = getEntry(x, y, z);
+        entry.present.or(present);
+        entry.isKnown = true;
+    }
+
+    /**
+     * Loads the index saved by the last clean shutdown, if there is one, and deletes it.
+     */
+    public synchronized void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a chunk index: " + file.getPath());
+            }
+            int numRegions = in.readInt();
+            long[] bits = new long[REGION_LONGS];
+            for (int region = 0; region < numRegions; region++) {
+                Entry entry = getEntry(in.readInt(), in.readInt(), in.readInt());
+                for (int index = 0; index < REGION_LONGS; index++) {
+                    bits[index] = in.readLong();
+                }
+                entry.present.or(BitSet.valueOf(bits));
+                entry.isKnown = true;
+            }
+        } catch (IOException e) {
+            logger.logWarning("Unable to load chunk index, regions will be checked as they are used.", e);
+            regions.clear();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {}
+            }
+        }
+        if (!file.delete()) {
+            logger.logWarning("Unable to delete chunk index " + file.getPath() + ", it may be out of date after a crash!");
+        }
+    }
+
+    /**
+     * Saves the known regions.  Only call once every saved chunk has been written to its region.
+     *
+     * @throws IOException If the index cannot be written
+     */
+    public synchronized void save() throws IOException {
+        int numRegions = 0;
+        for (Entry entry : regions.values()) {
+            if (entry.isKnown) {
+                numRegions++;
+            }
+        }
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(MAGIC);
+            out.writeInt(numRegions);
+            for (Entry entry : regions.values()) {
+                if (entry.isKnown) {
+                    out.writeInt(entry.x);
+                    out.writeInt(entry.y);
+                    out.writeInt(entry.z);
+                    long[] bits = entry.present.toLongArray();
+                    for (int index = 0; index < REGION_LONGS; index++) {
+                        out.writeLong(index < bits.length ? bits[index] : 0);
+                    }
+                }
+            }
+            out.close();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    private Entry getEntry(int x, int y, int z) {
+        long key = ChunkMap.pack(x, y, z);
+        Entry entry = regions.get(key);
+        if (entry == null) {
+            regions.put(key, entry = new Entry(x, y, z));
+        }
+        return entry;
+    }
+
+    private static class Entry {
+        private final int x;
+        private final int y;
+        private final int z;
+        private final BitSet present = new BitSet(Region.CHUNKS_PER_REGION);
+        private boolean isKnown = false;
+
+        private Entry(int x, int y, int z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+    }
+}
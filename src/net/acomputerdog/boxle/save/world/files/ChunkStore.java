@@ -0,0 +1,65 @@
+package net.acomputerdog.boxle.save.world.files;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Stores the encoded chunks of a region, each in a numbered slot.  A store decides how chunks are laid out on the disk
+ * (and whether they are compressed), while Region decides how a chunk is encoded.
+ * <p>
+ * Buffers returned by a store are only valid until the next call to the store.  Callers must synchronize.
+ */
+public interface ChunkStore {
+    /**
+     * Checks if a chunk is stored in a slot.
+     *
+     * @param index The slot to check
+     * @return Return true if the slot holds a chunk
+     */
+    public boolean has(int index);
+
+    /**
+     * Reads a chunk.
+     *
+     * @param index The slot to read
+     * @return Return a buffer holding the chunk between its position and limit, or null if the slot is empty
+     * @throws IOException If the chunk cannot be read
+     */
+    public ByteBuffer read(int index) throws IOException;
+
+    /**
+     * Starts writing a chunk.  The chunk is encoded into the returned buffer, starting at position 0, and then passed to
+     * finishWrite().
+     *
+     * @param index The slot to write
+     * @return Return a buffer with room for the largest chunk that this store was created for
+     * @throws IOException If the slot cannot be written
+     */
+    public ByteBuffer startWrite(int index) throws IOException;
+
+    /**
+     * Finishes writing a chunk.
+     *
+     * @param index The slot to write
+     * @param data  The buffer returned by startWrite(), with its position at the end of the chunk
+     * @throws IOException If the chunk cannot be written
+     */
+    public void finishWrite(int index, ByteBuffer data) throws IOException;
+
+    /**
+     * Forces all written chunks to the disk.
+     *
+     * @throws IOException If the chunks cannot be written
+     */
+    public void force() throws IOException;
+
+    /**
+     * Estimates the memory used by this store while it is open, including buffers, native compression state, and mapped
+     * file contents.
+     *
+     * @return Return the estimated size in bytes
+     */
+    public long getMemorySize();
+
+    public void close() throws IOException;
+}
@@ -0,0 +1,61 @@
+package net.acomputerdog.boxle.save.world.files;
+
+import java.io.IOException;
+
+/**
+ * Compresses encoded chunks for a SectorChunkStore.  Each stored chunk starts with the ID of the codec that compressed
+ * it, so chunks compressed by different codecs can be mixed in one file.  Codecs are created by CompressionCodecs.
+ * <p>
+ * Not thread-safe, each store has its own codecs.
+ */
+public interface CompressionCodec {
+    /**
+     * Gets the ID that is stored with each chunk compressed by this codec.
+     *
+     * @return Return the ID
+     */
+    public int getId();
+
+    /**
+     * Gets the largest size that data of a given length can compress to.
+     *
+     * @param length The length of the data
+     * @return Return the largest compressed length, in bytes
+     */
+    public int getMaxCompressedLength(int length);
+
+    /**
+     * Compresses data.
+     *
+     * @param src    The data to compress, starting at index 0
+     * @param length The length of the data
+     * @param dest   The array to write to, with at least getMaxCompressedLength(length) bytes after offset
+     * @param offset The index in dest to start writing at
+     * @return Return the compressed length
+     */
+    public int compress(byte[] src, int length, byte[] dest, int offset);
+
+    /**
+     * Decompresses data.
+     *
+     * @param src    The compressed data
+     * @param offset The index in src that the data starts at
+     * @param length The length of the compressed data
+     * @param dest   The array to write the data to, starting at index 0
+     * @return Return the decompressed length
+     * @throws IOException If the data is corrupt, or does not fit in dest
+     */
+    public int decompress(byte[] src, int offset, int length, byte[] dest) throws IOException;
+
+    /**
+     * Estimates the memory used by this codec, including native compression state.
+     *
+     * @return Return the estimated size in bytes
+     */
+    public long getMemorySize();
+
+    /**
+     * Frees any native resources.  The codec cannot be used afterwards.
+     */
+    public void close();
+}
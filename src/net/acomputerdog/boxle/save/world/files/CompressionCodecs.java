@@ -0,0 +1,110 @@
+package net.acomputerdog.boxle.save.world.files;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Creates the CompressionCodecs that chunks can be stored with, by the ID stored with each chunk or by the name used in
+ * the game config.
+ * <p>
+ * IDs are stored in region files, so an ID must never be reused for a different format.  A new dictionary needs a new ID,
+ * as chunks compressed with the old one can only be read with the old one.
+ */
+public class CompressionCodecs {
+    public static final int NONE = 0;
+    public static final int DEFLATE = 1;
+    public static final int DEFLATE_DICTIONARY = 2;
+    public static final int LZ4 = 3;
+
+    /**
+     * Chunks written before codecs were stored are zlib streams, which start with this byte (deflate with a 32 KiB
+     * window).  They are read as if this were their ID.
+     */
+    public static final int ZLIB = 0x78;
+
+    public static final int DEFAULT_LEVEL = 1;
+
+    /**
+     * Resource holding the preset dictionary of DEFLATE_DICTIONARY, built by ChunkDictionaryTrainer.
+     */
+    public static final String DICTIONARY_RESOURCE = "/save/chunks_v1.dict";
+
+    private static final String[] NAMES = {"none", "deflate", "deflate_dictionary", "lz4"};
+
+    private static byte[] dictionary;
+
+    /**
+     * Creates a codec.
+     *
+     * @param id    The ID of the codec
+     * @param level The level for codecs that have levels, from 0 to 9
+     * @return Return a new codec
+     * @throws IOException If there is no codec with the ID, or its dictionary cannot be loaded
+     */
+    public static CompressionCodec create(int id, int level) throws IOException {
+        switch (id) {
+            case NONE:
+                return new NoCompressionCodec(id);
+            case DEFLATE:
+                return new DeflateCodec(id, level, null, false);
+            case DEFLATE_DICTIONARY:
+                return new DeflateCodec(id, level, getDictionary(), false);
+            case LZ4:
+                return new LZ4Codec(id);
+            case ZLIB:
+                return new DeflateCodec(id, level, null, true);
+            default:
+                throw new IOException("Unknown compression codec: " + id);
+        }
+    }
+
+    /**
+     * Gets the ID of a codec from its name.
+     *
+     * @param name The name of the codec
+     * @return Return the ID, or -1 if there is no codec with the name
+     */
+    public static int getId(String name) {
+        for (int id = 0; id < NAMES.length; id++) {
+            if (NAMES[id].equalsIgnoreCase(name)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    public static String getName(int id) {
+        if (id == ZLIB) {
+            return "zlib";
+        }
+        return id >= 0 && id < NAMES.length ? NAMES[id] : String.valueOf(id);
+    }
+
+    /**
+     * Gets the preset dictionary of DEFLATE_DICTIONARY, loading it the first time.
+     *
+     * @return Return the dictionary.  Must not be modified.
+     * @throws IOException If the dictionary cannot be loaded
+     */
+    public static synchronized byte[] getDictionary() throws IOException {
+        if (dictionary == null) {
+            InputStream in = CompressionCodecs.class.getResourceAsStream(DICTIONARY_RESOURCE);
+            if (in == null) {
+                throw new IOException("Missing chunk dictionary: " + DICTIONARY_RESOURCE);
+            }
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    out.write(buffer, 0, read);
+                }
+                dictionary = out.toByteArray();
+            } finally {
+                in.close();
+            }
+        }
+        return dictionary;
+    }
+}
@@ -0,0 +1,131 @@
+package net.acomputerdog.boxle.save.world.files;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses chunks with deflate, optionally primed with a preset dictionary.  Chunks are small, so most of their
+ * content has not been seen before by the time it is compressed; a dictionary of content that is common to typical
+ * chunks lets deflate refer back to it instead.
+ * <p>
+ * The Deflater and Inflater are only created when first used, so a store that only reads a few old chunks with this
+ * codec does not pay for a Deflater.
+ */
+public class DeflateCodec implements CompressionCodec {
+    /**
+     * Rough native memory of a Deflater with the default window and memory level.
+     */
+    private static final long DEFLATER_MEMORY = 256 * 1024;
+
+    /**
+     * Rough native memory of an Inflater with the default window.
+     */
+    private static final long INFLATER_MEMORY = 44 * 1024;
+
+    private final int id;
+    private final int level;
+    private final byte[] dictionary;
+
+    /**
+     * If true, data is wrapped in a zlib header and checksum.  Only used for chunks written before codecs were stored.
+     */
+    private final boolean zlibWrapped;
+
+    private Deflater deflater;
+    private Inflater inflater;
+
+    /**
+     * Creates a new DeflateCodec
+     *
+     * @param id          The ID stored with each chunk
+     * @param level       The deflate level, from 0 to 9
+     * @param dictionary  The preset dictionary, or null for none
+     * @param zlibWrapped If true, data has a zlib header and checksum
+     */
+    public DeflateCodec(int id, int level, byte[] dictionary, boolean zlibWrapped) {
+        this.id = id;
+        this.level = level;
+        this.dictionary = dictionary;
+        this.zlibWrapped = zlibWrapped;
+    }
+
+    @Override
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public int getMaxCompressedLength(int length) {
+        // zlib's deflateBound() plus room for the zlib wrapper
+        return length + (length >> 12) + (length >> 14) + (length >> 25) + 13 + 6;
+    }
+
+    @Override
+    public int compress(byte[] src, int length, byte[] dest, int offset) {
+        if (deflater == null) {
+            deflater = new Deflater(level, !zlibWrapped);
+        }
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(src, 0, length);
+        deflater.finish();
+        int end = offset;
+        while (!deflater.finished()) {
+            if (end == dest.length) {
+                throw new IllegalStateException("Compressed chunk is larger than expected!");
+            }
+            end += deflater.deflate(dest, end, dest.length - end);
+        }
+        return end - offset;
+    }
+
+    @Override
+    public int decompress(byte[] src, int offset, int length, byte[] dest) throws IOException {
+        if (inflater == null) {
+            inflater = new Inflater(!zlibWrapped);
+        }
+        inflater.reset();
+        inflater.setInput(src, offset, length);
+        int end = 0;
+        try {
+            if (dictionary != null && !zlibWrapped) {
+                inflater.setDictionary(dictionary);
+            }
+            while (!inflater.finished()) {
+                int read = inflater.inflate(dest, end, dest.length - end);
+                if (read == 0 && inflater.needsDictionary() && dictionary != null) {
+                    inflater.setDictionary(dictionary);
+                    continue;
+                }
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary() || end == dest.length)) {
+                    throw new IOException("Chunk data is truncated or too long!");
+                }
+                end += read;
+            }
+        } catch (DataFormatException | IllegalArgumentException e) {
+            throw new IOException("Chunk data is corrupt!", e);
+        }
+        return end;
+    }
+
+    @Override
+    public long getMemorySize() {
+        return (deflater == null ? 0 : DEFLATER_MEMORY) + (inflater == null ? 0 : INFLATER_MEMORY);
+    }
+
+    @Override
+    public void close() {
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package net.acomputerdog.boxle.save.world.files;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Fast LZ77 compression in the LZ4 block format, in pure Java.  Compresses worse than deflate, but several times faster
+ * in both directions, so it suits servers that save far more chunks than they can afford to deflate.
+ * <p>
+ * The data is a list of sequences: a token byte (literal count in the high 4 bits, match length - MIN_MATCH in the low 4
+ * bits), extra literal count bytes if the count is 15 or more, the literals, a little-endian 2 byte offset back to the
+ * match, and extra match length bytes if the length is 15 or more.  Extra count bytes are added together, with every
+ * byte but the last being 255.  The last sequence only has literals.
+ */
+public class LZ4Codec implements CompressionCodec {
+    private static final int MIN_MATCH = 4;
+
+    /**
+     * Matches may not start within this many bytes of the end, as in LZ4, so the last sequence always has literals.
+     */
+    private static final int MF_LIMIT = 12;
+    private static final int LAST_LITERALS = 5;
+
+    private static final int MAX_OFFSET = 65535;
+
+    private static final int HASH_LOG = 12;
+
+    /**
+     * Position plus tableBase of the last 4 bytes seen with each hash.  Reused between chunks: entries below tableBase
+     * are from earlier chunks, so the table only has to be cleared when tableBase wraps around.
+     */
+    private final int[] hashTable = new int[1 << HASH_LOG];
+    private int tableBase = Integer.MAX_VALUE;
+
+    private final int id;
+
+    public LZ4Codec(int id) {
+        this.id = id;
+    }
+
+    @Override
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public int getMaxCompressedLength(int length) {
+        return length + (length / 255) + 16;
+    }
+
+    @Override
+    public int compress(byte[] src, int length, byte[] dest, int offset) {
+        int out = offset;
+        int anchor = 0;
+        if (length > MF_LIMIT) {
+            if (tableBase > Integer.MAX_VALUE - length) {
+                Arrays.fill(hashTable, 0);
+                tableBase = 1;
+            }
+            int base = tableBase;
+            tableBase += length;
+            int limit = length - MF_LIMIT;
+            int matchLimit = length - LAST_LITERALS;
+            int pos = 0;
+            while (pos < limit) {
+                int sequence = readInt(src, pos);
+                int hash = hash(sequence);
+                int ref = hashTable[hash] - base;
+                hashTable[hash] = pos + base;
+                if (ref < 0 || pos - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                    pos += 1 + ((pos - anchor) >>> 6); //skip faster through data that does not compress
+                    continue;
+                }
+                while (pos > anchor && ref > 0 && src[pos - 1] == src[ref - 1]) {
+                    pos--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (pos + matchLength < matchLimit && src[ref + matchLength] == src[pos + matchLength]) {
+                    matchLength++;
+                }
+                out = writeSequence(src, anchor, pos - anchor, pos - ref, matchLength, dest, out);
+                pos += matchLength;
+                anchor = pos;
+            }
+        }
+        int literals = length - anchor;
+        dest[out++] = (byte) (Math.min(literals, 15) << 4);
+        out = writeLength(literals, dest, out);
+        System.arraycopy(src, anchor, dest, out, literals);
+        return out + literals - offset;
+    }
+
+    @Override
+    public int decompress(byte[] src, int offset, int length, byte[] dest) throws IOException {
+        int in = offset;
+        int end = offset + length;
+        int out = 0;
+        while (true) {
+            if (in >= end) {
+                throw new IOException("Chunk data is truncated!");
+            }
+            int token = src[in++] & 0xFF;
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int value;
+                do {
+                    if (in >= end || literals > dest.length) {
+                        throw new IOException("Chunk data is corrupt!");
+                    }
+                    value = src[in++] & 0xFF;
+                    literals += value;
+                } while (value == 255);
+            }
+            if (literals > end - in || literals > dest.length - out) {
+                throw new IOException("Chunk data is truncated or too long!");
+            }
+            System.arraycopy(src, in, dest, out, literals);
+            in += literals;
+            out += literals;
+            if (in == end) {
+                return out;
+            }
+            if (end - in < 2) {
+                throw new IOException("Chunk data is truncated!");
+            }
+            int matchOffset = (src[in] & 0xFF) | ((src[in + 1] & 0xFF) << 8);
+            in += 2;
+            if (matchOffset == 0 || matchOffset > out) {
+                throw new IOException("Chunk data is corrupt!");
+            }
+            int matchLength = token & 0x0F;
+            if (matchLength == 15) {
+                int value;
+                do {
+                    if (in >= end || matchLength > dest.length) {
+                        throw new IOException("Chunk data is corrupt!");
+                    }
+                    value = src[in++] & 0xFF;
+                    matchLength += value;
+                } while (value == 255);
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength > dest.length - out) {
+                throw new IOException("Chunk data is too long!");
+            }
+            int ref = out - matchOffset;
+            if (matchOffset >= matchLength) {
+                System.arraycopy(dest, ref, dest, out, matchLength);
+            } else {
+                for (int index = 0; index < matchLength; index++) { //overlaps, so copy forwards one byte at a time
+                    dest[out + index] = dest[ref + index];
+                }
+            }
+            out += matchLength;
+        }
+    }
+
+    @Override
+    public long getMemorySize() {
+        return hashTable.length * 4L;
+    }
+
+    @Override
+    public void close() {}
+
+    private static int writeSequence(byte[] src, int start, int literals, int matchOffset, int matchLength, byte[] dest, int out) {
+        int extraLength = matchLength - MIN_MATCH;
+        dest[out++] = (byte) ((Math.min(literals, 15) << 4) | Math.min(extraLength, 15));
+        out = writeLength(literals, dest, out);
+        System.arraycopy(src, start, dest, out, literals);
+        out += literals;
+        dest[out++] = (byte) matchOffset;
+        dest[out++] = (byte) (matchOffset >>> 8);
+        return writeLength(extraLength, dest, out);
+    }
+
+    /**
+     * Writes the extra count bytes of a length, if it does not fit in its 4 bits of the token.
+     */
+    private static int writeLength(int length, byte[] dest, int out) {
+        if (length >= 15) {
+            int remaining = length - 15;
+            while (remaining >= 255) {
+                dest[out++] = (byte) 255;
+                remaining -= 255;
+            }
+            dest[out++] = (byte) remaining;
+        }
+        return out;
+    }
+
+    private static int readInt(byte[] src, int pos) {
+        return (src[pos] & 0xFF) | ((src[pos + 1] & 0xFF) << 8) | ((src[pos + 2] & 0xFF) << 16) | ((src[pos + 3] & 0xFF) << 24);
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
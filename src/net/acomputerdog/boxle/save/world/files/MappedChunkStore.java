@@ -0,0 +1,124 @@
+package net.acomputerdog.boxle.save.world.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Stores chunks uncompressed in fixed-size slots of a memory-mapped file.  Chunks are encoded and decoded directly in
+ * the mapping, so there is no compression and no copy of the file on the heap; changed pages are written back by the
+ * OS, or by force().  Uses much more disk space than a SectorChunkStore.
+ * <p>
+ * Layout: magic int, slot size int, slot count int, padded to HEADER_SIZE, then the slots.  Each slot is the length of
+ * its chunk (0 if empty) followed by the chunk.
+ */
+public class MappedChunkStore implements ChunkStore {
+    /**
+     * "BXRM"
+     */
+    public static final int MAGIC = 0x4258524D;
+
+    private static final int HEADER_SIZE = 4096;
+
+    private final File file;
+    private final int numChunks;
+    private final int slotSize;
+
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer map;
+
+    /**
+     * Opens a store, creating its file if it does not exist.
+     *
+     * @param file      The file to open
+     * @param numChunks The number of chunk slots in the file
+     * @param maxLength The largest encoded chunk, in bytes
+     * @throws IOException If the file cannot be opened or was created with different sizes
+     */
+    public MappedChunkStore(File file, int numChunks, int maxLength) throws IOException {
+        this.file = file;
+        this.numChunks = numChunks;
+        this.slotSize = maxLength + 4; // +4 for chunk length
+        raf = new RandomAccessFile(file, "rw");
+        try {
+            boolean isNew = raf.length() == 0;
+            map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) numChunks * slotSize);
+            if (isNew) {
+                map.putInt(0, MAGIC);
+                map.putInt(4, slotSize);
+                map.putInt(8, numChunks);
+            } else if (map.getInt(0) != MAGIC || map.getInt(4) != slotSize || map.getInt(8) != numChunks) {
+                throw new IOException("Mapped region file " + file.getPath() + " has an unknown layout!");
+            }
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Counts the whole mapping, as chunks are spread through all of it.
+     */
+    @Override
+    public long getMemorySize() {
+        return map.capacity();
+    }
+
+    @Override
+    public boolean has(int index) {
+        return map.getInt(findSlot(index)) > 0;
+    }
+
+    @Override
+    public ByteBuffer read(int index) throws IOException {
+        int slot = findSlot(index);
+        int length = map.getInt(slot);
+        if (length <= 0) {
+            return null;
+        }
+        if (length > slotSize - 4) {
+            throw new IOException("Chunk " + index + " in " + file.getPath() + " has an invalid length: " + length + "!");
+        }
+        ByteBuffer data = map.duplicate();
+        data.limit(slot + 4 + length);
+        data.position(slot + 4);
+        return data;
+    }
+
+    @Override
+    public ByteBuffer startWrite(int index) {
+        ByteBuffer data = map.duplicate();
+        int slot = findSlot(index);
+        data.limit(slot + slotSize);
+        data.position(slot + 4);
+        return data.slice();
+    }
+
+    @Override
+    public void finishWrite(int index, ByteBuffer data) {
+        map.putInt(findSlot(index), data.position());
+    }
+
+    @Override
+    public void force() {
+        map.force();
+    }
+
+    /**
+     * Closes the file.  The mapping itself stays valid until it is garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    private int findSlot(int index) {
+        if (index < 0 || index >= numChunks) {
+            throw new IllegalArgumentException("Invalid chunk slot: " + index);
+        }
+        return HEADER_SIZE + index * slotSize;
+    }
+}
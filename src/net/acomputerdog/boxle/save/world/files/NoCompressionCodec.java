@@ -0,0 +1,48 @@
+package net.acomputerdog.boxle.save.world.files;
+
+import java.io.IOException;
+
+/**
+ * Stores chunks as they are.  Encoded chunks are already run-length encoded, so this still saves most of the space of a
+ * MappedChunkStore while spending no time on compression.
+ */
+public class NoCompressionCodec implements CompressionCodec {
+    private final int id;
+
+    public NoCompressionCodec(int id) {
+        this.id = id;
+    }
+
+    @Override
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public int getMaxCompressedLength(int length) {
+        return length;
+    }
+
+    @Override
+    public int compress(byte[] src, int length, byte[] dest, int offset) {
+        System.arraycopy(src, 0, dest, offset, length);
+        return length;
+    }
+
+    @Override
+    public int decompress(byte[] src, int offset, int length, byte[] dest) throws IOException {
+        if (length > dest.length) {
+            throw new IOException("Chunk data is too long!");
+        }
+        System.arraycopy(src, offset, dest, 0, length);
+        return length;
+    }
+
+    @Override
+    public long getMemorySize() {
+        return 0;
+    }
+
+    @Override
+    public void close() {}
+}
@@ -8,25 +8,47 @@ import net.acomputerdog.boxle.math.vec.VecPool;
 import net.acomputerdog.boxle.save.util.BlockMap;
 import net.acomputerdog.boxle.save.util.RandomAccessBuffer;
 import net.acomputerdog.boxle.world.Chunk;
+import net.acomputerdog.boxle.world.ChunkSnapshot;
 import net.acomputerdog.boxle.world.World;
 import net.acomputerdog.core.logger.CLogger;
 
 import java.io.*;
-import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
-//todo: Add isModifiedFromLoad
+/**
+ * A cube of REGION_SIZE^3 chunks, stored in one file through a ChunkStore: either compressed one chunk at a time in a
+ * SectorChunkStore, or uncompressed in a MappedChunkStore.  Either way, loading or saving a chunk only reads or writes
+ * that chunk.  Regions saved in the old format (the whole file as one deflate stream) are converted when they are opened.
+ */
 public class Region implements Comparable<Region> {
     private static final CLogger logger = new CLogger("Region_IO", false, true);
 
-    private static final int CHUNK_MARKER = 0x11111111;
-
     public static final int REGION_SIZE = 10;
     public static final int REGION_SIZE_BLOCKS = REGION_SIZE * Chunk.CHUNK_SIZE;
 
-    private static final int chunkSize = (Chunk.CHUNK_VOLUME * 4) + 4; // +4 for chunk flag
+    public static final int CHUNKS_PER_REGION = REGION_SIZE * REGION_SIZE * REGION_SIZE;
+
+    /*
+     * Chunks are encoded by ChunkCodec.  Chunks converted from the old format are stored in its raw format, without a
+     * heightmap if they were saved before heightmaps existed, and are re-encoded the next time they are saved.
+     */
+    private static final int blockDataSize = Chunk.CHUNK_VOLUME * 4;
+    private static final int heightMapDataSize = Chunk.CHUNK_SIZE * Chunk.CHUNK_SIZE;
+
+    /*
+     * Layout of the old format, only used to convert old regions.
+     */
+    private static final int LEGACY_CHUNK_MARKER = 0x11111111;
+    private static final int LEGACY_HEIGHTMAP_MARKER = 0x48484848;
+    private static final int legacyChunkSize = blockDataSize + 4; // +4 for chunk flag
+    private static final int legacyHeightMapSize = heightMapDataSize + 4; // +4 for heightmap flag
+    private static final long legacyHeightMapStart = (long) CHUNKS_PER_REGION * legacyChunkSize;
 
     private static final int chunkSpaceY = REGION_SIZE * REGION_SIZE;
     private static final int chunkSpaceX = REGION_SIZE;
@@ -36,47 +58,73 @@ public class Region implements Comparable<Region> {
     private final World world;
     private final File file;
     private final Vec3i loc;
-    private final RandomAccessBuffer rab;
+
+    /**
+     * If true, new region files are stored uncompressed in a MappedChunkStore.  Existing files keep their format.
+     */
+    private final boolean uncompressed;
+
+    /**
+     * The CompressionCodecs ID and level that chunks are compressed with in a SectorChunkStore.  Chunks that were
+     * already written keep their format.
+     */
+    private final int compression;
+    private final int compressionLevel;
+
+    private final ChunkCodec codec = new ChunkCodec();
+
+    /**
+     * The open region file, or null if there is no file yet.  Created by the first write.
+     */
+    private ChunkStore store;
 
     private boolean isModifiedFromLoad = false;
 
     public Region(WorldMetaFile metaFile, File file, Vec3i loc) {
+        this(metaFile, file, loc, false);
+    }
+
+    public Region(WorldMetaFile metaFile, File file, Vec3i loc, boolean uncompressed) {
+        this(metaFile, file, loc, uncompressed, CompressionCodecs.DEFLATE, CompressionCodecs.DEFAULT_LEVEL);
+    }
+
+    public Region(WorldMetaFile metaFile, File file, Vec3i loc, boolean uncompressed, int compression, int compressionLevel) {
         this.metaFile = metaFile;
         this.world = metaFile.getWorld();
         this.file = file;
         this.loc = loc;
-        rab = new RandomAccessBuffer();
+        this.uncompressed = uncompressed;
+        this.compression = compression;
+        this.compressionLevel = compressionLevel;
         if (file.isFile()) {
-            InputStream in = null;
             try {
-                rab.load(in = new InflaterInputStream(new FileInputStream(file), new Inflater()));
-                in.close();
+                openFile();
             } catch (IOException e) {
-                if (in != null) {
-                    try {
-                        in.close();
-                    } catch (IOException ignored) {}
-                }
-                logger.logError("Region at " + world.getName() + "/" + loc.asCoords() + " could not be fully opened!  The chunks within may be lost!");
+                logger.logError("Region at " + world.getName() + "/" + loc.asCoords() + " could not be opened!  The chunks within may be lost!", e);
             }
         }
     }
 
-    public void save() throws IOException {
-        OutputStream out = null;
-        try {
-            rab.save(out = new DeflaterOutputStream(new FileOutputStream(file), new Deflater(1)));
-            out.flush();
-            out.close();
-        } finally {
-            if (out != null) {
-                try {
-                    out.close();
-                } catch (IOException ignored) {}
-            }
+    /**
+     * Forces all written chunks to the disk.
+     *
+     * @throws IOException If the region cannot be written
+     */
+    public synchronized void save() throws IOException {
+        if (store != null) {
+            store.force();
         }
     }
 
+    /**
+     * Estimates the memory used by this region while it is open.
+     *
+     * @return Return the estimated size in bytes, 0 if there is no file yet
+     */
+    public synchronized long getMemorySize() {
+        return store == null ? 0 : store.getMemorySize();
+    }
+
     public boolean isModifiedFromLoad() {
         return isModifiedFromLoad;
     }
@@ -85,87 +133,297 @@ public class Region implements Comparable<Region> {
         this.isModifiedFromLoad = isModifiedFromLoad;
     }
 
-    public void close() {
-        rab.clear();
+    public synchronized void close() {
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                logger.logWarning("Unable to close region at " + world.getName() + "/" + loc.asCoords(), e);
+            }
+            store = null;
+        }
     }
 
     public boolean hasChunkGlobal(Vec3i cLoc) {
-        return !(cLoc == null || rab.length() < chunkSize) && hasChunkAt(findChunkLoc(CoordConverter.chunkLocInRegion(cLoc.x), CoordConverter.chunkLocInRegion(cLoc.y), CoordConverter.chunkLocInRegion(cLoc.z)));
+        return cLoc != null && hasChunkAt(findChunkIndex(CoordConverter.chunkLocInRegion(cLoc.x), CoordConverter.chunkLocInRegion(cLoc.y), CoordConverter.chunkLocInRegion(cLoc.z)));
     }
 
     public boolean hasChunk(Vec3i cLoc) {
-        return cLoc != null && rab.length() >= chunkSize && hasChunkAt(findChunkLoc(cLoc));
+        return cLoc != null && hasChunkAt(findChunkIndex(cLoc));
     }
 
-    private boolean hasChunkAt(long pos) {
-        if (pos + chunkSize >= rab.length()) return false;
-        rab.seek(pos);
-        return rab.readInt() == CHUNK_MARKER;
+    private synchronized boolean hasChunkAt(int index) {
+        return store != null && store.has(index);
     }
 
-    public void writeChunk(Chunk chunk) throws IOException {
-        Vec3i rLoc = VecPool.getVec3i(CoordConverter.chunkLocInRegion(chunk.getXLoc()), CoordConverter.chunkLocInRegion(chunk.getYLoc()), CoordConverter.chunkLocInRegion(chunk.getZLoc()));
-        verifyChunkLoc(rLoc);
-        rab.seek(findChunkLoc(rLoc));
-        rab.writeInt(CHUNK_MARKER);
-        BlockMap bm = metaFile.getBlockMap();
-        for (int y = 0; y < Chunk.CHUNK_SIZE; y++) {
-            for (int x = 0; x < Chunk.CHUNK_SIZE; x++) {
-                for (int z = 0; z < Chunk.CHUNK_SIZE; z++) {
-                    rab.writeInt(bm.getIdForBlock(chunk.getBlockAt(x, y, z)));
+    /**
+     * Gets the slots that hold a chunk, to fill a ChunkPresenceIndex.  Only reads the header of the file.
+     *
+     * @return Return the slots (see getChunkSlot()) that hold a chunk
+     */
+    public synchronized BitSet getChunkPresence() {
+        BitSet present = new BitSet(CHUNKS_PER_REGION);
+        if (store != null) {
+            for (int index = 0; index < CHUNKS_PER_REGION; index++) {
+                if (store.has(index)) {
+                    present.set(index);
                 }
             }
         }
+        return present;
+    }
+
+    /**
+     * Gets the slot of a chunk within its region.
+     *
+     * @param x x-loc of the chunk
+     * @param y y-loc of the chunk
+     * @param z z-loc of the chunk
+     * @return Return the index of the slot, from 0 to CHUNKS_PER_REGION
+     */
+    public static int getChunkSlot(int x, int y, int z) {
+        return (CoordConverter.chunkLocInRegion(x) * chunkSpaceX) + (CoordConverter.chunkLocInRegion(y) * chunkSpaceY) + (CoordConverter.chunkLocInRegion(z) * chunkSpaceZ);
+    }
+
+    public void writeChunk(Chunk chunk) throws IOException {
+        writeChunk(chunk.snapshot());
         chunk.setModifiedFromLoad(false);
-        VecPool.free(rLoc);
+    }
+
+    /**
+     * Writes a snapshot of a chunk.  The chunk itself may keep changing while this runs.
+     *
+     * @param chunk The snapshot to write
+     * @throws IOException If the chunk cannot be written
+     */
+    public void writeChunk(ChunkSnapshot chunk) throws IOException {
+        int index = findChunkIndexGlobal(chunk.getXLoc(), chunk.getYLoc(), chunk.getZLoc());
+        int[] fileIds = getFileIds(metaFile.getBlockMap(), chunk);
+        byte[] heightMap = chunk.getHeightMap(new byte[heightMapDataSize]);
+        synchronized (this) {
+            if (store == null) {
+                openFile();
+            }
+            ByteBuffer data = store.startWrite(index);
+            codec.encode(fileIds, heightMap, data);
+            store.finishWrite(index, data);
+            isModifiedFromLoad = true;
+        }
+    }
+
+    /**
+     * Writes a chunk that was already encoded by encodeChunk(), as when replaying a ChunkJournal.
+     *
+     * @param x    x-loc of the chunk
+     * @param y    y-loc of the chunk
+     * @param z    z-loc of the chunk
+     * @param data The encoded chunk, between its position and limit
+     * @throws IOException If the chunk cannot be written
+     */
+    public synchronized void writeEncodedChunk(int x, int y, int z, ByteBuffer data) throws IOException {
+        int index = findChunkIndexGlobal(x, y, z);
+        if (store == null) {
+            openFile();
+        }
+        ByteBuffer out = store.startWrite(index);
+        out.put(data);
+        store.finishWrite(index, out);
+        isModifiedFromLoad = true;
+    }
+
+    /**
+     * Encodes a snapshot of a chunk the same way that writeChunk() stores it.
+     *
+     * @param blockMap The BlockMap of the world
+     * @param chunk    The snapshot to encode
+     * @param codec    The codec to encode with
+     * @param out      The buffer to write to, with at least ChunkCodec.MAX_LENGTH bytes remaining
+     */
+    public static void encodeChunk(BlockMap blockMap, ChunkSnapshot chunk, ChunkCodec codec, ByteBuffer out) {
+        codec.encode(getFileIds(blockMap, chunk), chunk.getHeightMap(new byte[heightMapDataSize]), out);
+    }
+
+    /**
+     * Gets the BlockMap IDs of the blocks in a chunk, in Chunk.getBlockIndex() order.
+     */
+    private static int[] getFileIds(BlockMap bm, ChunkSnapshot chunk) {
+        int[] fileIds = new int[Chunk.CHUNK_VOLUME];
+        Block uniformBlock = chunk.getUniformBlock();
+        if (uniformBlock != null) {
+            Arrays.fill(fileIds, bm.getIdForBlock(uniformBlock));
+        } else {
+            chunk.exportBlockIds(fileIds);
+            int[] table = bm.getFileIds();
+            for (int block = 0; block < Chunk.CHUNK_VOLUME; block++) {
+                int id = fileIds[block];
+                int fileId = id < table.length ? table[id] : -1;
+                if (fileId < 0) { //first time this block is saved in this world
+                    fileId = bm.getIdForBlock(Blocks.getBlock(id));
+                    table = bm.getFileIds();
+                }
+                fileIds[block] = fileId;
+            }
+        }
+        return fileIds;
     }
 
     public Chunk readChunk(Vec3i cLoc) throws IOException {
         Vec3i rLoc = VecPool.getVec3i(CoordConverter.chunkLocInRegion(cLoc.x), CoordConverter.chunkLocInRegion(cLoc.y), CoordConverter.chunkLocInRegion(cLoc.z));
         verifyChunkLoc(rLoc);
-        if (!hasChunk(rLoc)) {
-            return null;
+        int index = findChunkIndex(rLoc);
+        VecPool.free(rLoc);
+        int[] ids = new int[Chunk.CHUNK_VOLUME];
+        byte[] heightMap = new byte[heightMapDataSize];
+        boolean hasHeightMap;
+        synchronized (this) {
+            ByteBuffer in = store == null ? null : store.read(index);
+            if (in == null) {
+                return null;
+            }
+            try {
+                hasHeightMap = ChunkCodec.decode(in, ids, heightMap);
+            } catch (IOException e) {
+                throw new IOException("Chunk at " + cLoc.asCoords() + " could not be decoded!", e);
+            }
+        }
+        BlockMap bm = metaFile.getBlockMap();
+        int numIds = bm.getNumIds(); //before the table, which may be replaced by a longer one in between
+        int[] table = bm.getRuntimeIds();
+        int badId = -1;
+        for (int block = 0; block < Chunk.CHUNK_VOLUME; block++) {
+            int val = ids[block];
+            if (val >= 0 && val < numIds) {
+                ids[block] = table[val];
+            } else {
+                badId = val;
+                ids[block] = Blocks.air.getRuntimeId();
+            }
         }
-        long loc = findChunkLoc(rLoc);
-        rab.seek(loc);
-        if (rab.readInt() != CHUNK_MARKER) {
-            logger.logError("Reading chunk from invalid area!");
+        if (badId != -1) {
+            logger.logWarning("No block for ID: " + badId + " in chunk at " + cLoc.asCoords() + "!  Air blocks will be loaded instead!");
             logger.logError("This should not happen, please report this error!");
         }
-        long offset = 4;
         Chunk chunk = new Chunk(world, cLoc);
-        BlockMap bm = metaFile.getBlockMap();
-        for (int y = 0; y < Chunk.CHUNK_SIZE; y++) {
-            for (int x = 0; x < Chunk.CHUNK_SIZE; x++) {
-                for (int z = 0; z < Chunk.CHUNK_SIZE; z++) {
-                    long pos = rab.position();
-                    if (pos != loc + offset) {
-                        logger.logError("RAB position moved!  Expected " + (loc + offset) + ", got " + pos + "!");
-                        logger.logError("This should not happen, please report this error!");
-                    }
-                    int val = rab.readInt();
-                    offset += 4;
-                    Block block = bm.getBlockForId(val);
-                    if (block == null) {
-                        logger.logWarning("No block for ID: " + val + "!  Air block will be loaded instead!");
-                        logger.logError("This should not happen, please report this error!");
-                        block = Blocks.air;
+        if (hasHeightMap) {
+            chunk.importBlockIds(ids, heightMap);
+        } else {
+            chunk.importBlockIds(ids);
+        }
+        chunk.setModifiedFromLoad(false);
+        return chunk;
+    }
+
+    /**
+     * Opens the region file in the format it was saved in, converting it first if it was saved in the old format.  New
+     * files are created in the format selected when this region was created.
+     */
+    private void openFile() throws IOException {
+        boolean mapped = uncompressed;
+        if (file.isFile() && file.length() > 0) {
+            int magic = readMagic(file);
+            if (magic == MappedChunkStore.MAGIC) {
+                mapped = true;
+            } else if (SectorFile.isSectorFile(magic)) {
+                mapped = false;
+            } else {
+                convertLegacyFile(mapped);
+            }
+        }
+        store = createStore(file, mapped);
+    }
+
+    private ChunkStore createStore(File file, boolean mapped) throws IOException {
+        if (mapped) {
+            return new MappedChunkStore(file, CHUNKS_PER_REGION, ChunkCodec.MAX_LENGTH);
+        }
+        return new SectorChunkStore(file, CHUNKS_PER_REGION, ChunkCodec.MAX_LENGTH, CompressionCodecs.create(compression, compressionLevel));
+    }
+
+    private static int readMagic(File file) throws IOException {
+        if (file.length() < 4) {
+            return 0;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            return in.readInt();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    /**
+     * Rewrites a region saved as one deflate stream into a new file, one chunk at a time, then replaces the old file.
+     */
+    private void convertLegacyFile(boolean mapped) throws IOException {
+        RandomAccessBuffer rab = new RandomAccessBuffer();
+        InputStream in = null;
+        try {
+            rab.load(in = new InflaterInputStream(new FileInputStream(file), new Inflater()));
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {}
+            }
+        }
+        File tempFile = new File(file.getPath() + ".tmp");
+        if (tempFile.exists() && !tempFile.delete()) {
+            throw new IOException("Unable to delete old temporary file: " + tempFile.getPath());
+        }
+        ChunkStore converted = createStore(tempFile, mapped);
+        int numChunks = 0;
+        try {
+            for (int index = 0; index < CHUNKS_PER_REGION; index++) {
+                long chunkLoc = (long) index * legacyChunkSize;
+                if (chunkLoc + legacyChunkSize > rab.length()) {
+                    break;
+                }
+                rab.seek(chunkLoc);
+                if (rab.readInt() != LEGACY_CHUNK_MARKER) {
+                    continue;
+                }
+                ByteBuffer data = converted.startWrite(index); //already in ChunkCodec's raw format
+                data.put(rab.readBytes(blockDataSize));
+                long heightMapLoc = legacyHeightMapStart + (long) index * legacyHeightMapSize;
+                if (heightMapLoc + legacyHeightMapSize <= rab.length()) {
+                    rab.seek(heightMapLoc);
+                    if (rab.readInt() == LEGACY_HEIGHTMAP_MARKER) {
+                        data.put(rab.readBytes(heightMapDataSize));
                     }
-                    chunk.setBlockAt(x, y, z, block);
                 }
+                converted.finishWrite(index, data);
+                numChunks++;
             }
+            converted.force();
+        } finally {
+            converted.close();
         }
-        chunk.setModifiedFromLoad(false);
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        logger.logInfo("Converted region at " + world.getName() + "/" + loc.asCoords() + " (" + numChunks + " chunks) to the " + (mapped ? "mapped" : "sector") + " format.");
+    }
+
+    /**
+     * Finds the index of a chunk from its global chunk location, checking that it is within this region.
+     */
+    private int findChunkIndexGlobal(int x, int y, int z) {
+        Vec3i rLoc = VecPool.getVec3i(CoordConverter.chunkLocInRegion(x), CoordConverter.chunkLocInRegion(y), CoordConverter.chunkLocInRegion(z));
+        verifyChunkLoc(rLoc);
+        int index = findChunkIndex(rLoc);
         VecPool.free(rLoc);
-        return chunk;
+        return index;
     }
 
-    private long findChunkLoc(Vec3i cLoc) {
-        return findChunkLoc(cLoc.x, cLoc.y, cLoc.z);
+    private int findChunkIndex(Vec3i cLoc) {
+        return findChunkIndex(cLoc.x, cLoc.y, cLoc.z);
     }
 
-    private long findChunkLoc(int x, int y, int z) {
-        return ((x * chunkSpaceX) + (y * chunkSpaceY) + (z * chunkSpaceZ)) * chunkSize;
+    private int findChunkIndex(int x, int y, int z) {
+        return (x * chunkSpaceX) + (y * chunkSpaceY) + (z * chunkSpaceZ);
     }
 
     public File getFile() {
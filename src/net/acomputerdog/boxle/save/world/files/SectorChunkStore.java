@@ -0,0 +1,136 @@
+package net.acomputerdog.boxle.save.world.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Stores each chunk compressed on its own in a SectorFile.  Each entry is the ID of the CompressionCodec that compressed
+ * the chunk, then the compressed chunk, so changing the codec only affects chunks written afterwards.  Entries written
+ * before codecs were stored are plain zlib streams, and are told apart by their first byte (CompressionCodecs.ZLIB).
+ */
+public class SectorChunkStore implements ChunkStore {
+    private final SectorFile sectors;
+
+    /**
+     * The codec that chunks are written with.
+     */
+    private final CompressionCodec codec;
+
+    /**
+     * Codecs that chunks have been read with, by ID.  Created as they are needed.
+     */
+    private final CompressionCodec[] readCodecs = new CompressionCodec[256];
+
+    private final ByteBuffer readBuffer;
+    private final ByteBuffer writeBuffer;
+    private final byte[] compressBuffer;
+
+    /**
+     * Opens a store that writes chunks with deflate, creating its file if it does not exist.
+     *
+     * @param file      The file to open
+     * @param numChunks The number of chunk slots in the file
+     * @param maxLength The largest encoded chunk, in bytes
+     * @throws IOException If the file cannot be opened
+     */
+    public SectorChunkStore(File file, int numChunks, int maxLength) throws IOException {
+        this(file, numChunks, maxLength, CompressionCodecs.create(CompressionCodecs.DEFLATE, CompressionCodecs.DEFAULT_LEVEL));
+    }
+
+    /**
+     * Opens a store, creating its file if it does not exist.
+     *
+     * @param file      The file to open
+     * @param numChunks The number of chunk slots in the file
+     * @param maxLength The largest encoded chunk, in bytes
+     * @param codec     The codec to write chunks with.  Closed along with the store.
+     * @throws IOException If the file cannot be opened
+     */
+    public SectorChunkStore(File file, int numChunks, int maxLength, CompressionCodec codec) throws IOException {
+        this.codec = codec;
+        readCodecs[codec.getId()] = codec;
+        try {
+            sectors = new SectorFile(file, numChunks);
+        } catch (IOException e) {
+            codec.close();
+            throw e;
+        }
+        readBuffer = ByteBuffer.allocate(maxLength);
+        writeBuffer = ByteBuffer.allocate(maxLength);
+        compressBuffer = new byte[1 + codec.getMaxCompressedLength(maxLength)];
+    }
+
+    @Override
+    public long getMemorySize() {
+        long size = readBuffer.capacity() + writeBuffer.capacity() + compressBuffer.length + sectors.getNumEntries() * 8L;
+        for (CompressionCodec readCodec : readCodecs) {
+            if (readCodec != null) {
+                size += readCodec.getMemorySize();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public boolean has(int index) {
+        return sectors.has(index);
+    }
+
+    @Override
+    public ByteBuffer read(int index) throws IOException {
+        byte[] compressed = sectors.read(index);
+        if (compressed == null) {
+            return null;
+        }
+        if (compressed.length == 0) {
+            throw new IOException("Chunk data is truncated!");
+        }
+        int id = compressed[0] & 0xFF;
+        CompressionCodec readCodec = readCodecs[id];
+        if (readCodec == null) {
+            readCodecs[id] = readCodec = CompressionCodecs.create(id, CompressionCodecs.DEFAULT_LEVEL);
+        }
+        int start = getDataStart(id);
+        int length = readCodec.decompress(compressed, start, compressed.length - start, readBuffer.array());
+        readBuffer.clear();
+        readBuffer.limit(length);
+        return readBuffer;
+    }
+
+    @Override
+    public ByteBuffer startWrite(int index) {
+        writeBuffer.clear();
+        return writeBuffer;
+    }
+
+    @Override
+    public void finishWrite(int index, ByteBuffer data) throws IOException {
+        int start = getDataStart(codec.getId());
+        compressBuffer[0] = (byte) codec.getId();
+        int length = codec.compress(data.array(), data.position(), compressBuffer, start);
+        sectors.write(index, compressBuffer, start + length);
+    }
+
+    @Override
+    public void force() throws IOException {
+        sectors.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (CompressionCodec readCodec : readCodecs) {
+            if (readCodec != null) {
+                readCodec.close();
+            }
+        }
+        sectors.close();
+    }
+
+    /**
+     * Gets the index in an entry that the compressed chunk starts at.  The ID of an old chunk is part of its zlib header.
+     */
+    private static int getDataStart(int id) {
+        return id == CompressionCodecs.ZLIB ? 0 : 1;
+    }
+}
@@ -0,0 +1,327 @@
+package net.acomputerdog.boxle.save.world.files;
+
+import net.acomputerdog.core.logger.CLogger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+/**
+ * A file of numbered entries, each stored in a run of fixed-size sectors.  The file starts with a header table holding
+ * the first sector and the length in bytes of every entry, so a single entry can be read or replaced with positional
+ * I/O without touching the rest of the file.
+ * <p>
+ * Layout: magic int, entry count int, then one (sector offset int, length int) pair per entry, padded to a whole number
+ * of sectors.  An entry with a length of 0 does not exist.  Free sectors are tracked in memory and reused.
+ * <p>
+ * Every entry takes at least one sector, so sectors are kept small enough that a compressed chunk does not waste most
+ * of one.  Files with LEGACY_MAGIC use the old 4 KiB sectors and are still read and written as such.
+ * <p>
+ * Entries are copy-on-write: a new version is always written to free sectors, and the header is only switched over to it
+ * by force(), after the data is on the disk.  The old sectors are not reused until the switched header is on the disk as
+ * well, so a crash at any point leaves every entry as it was at the last force(), or as it is now.
+ */
+public class SectorFile {
+    private static final CLogger logger = new CLogger("Sector_File", false, true);
+
+    /**
+     * "BXR3"
+     */
+    public static final int MAGIC = 0x42585233;
+    public static final int SECTOR_SIZE = 256;
+
+    /**
+     * "BXR2", files written before the sector size was lowered.
+     */
+    public static final int LEGACY_MAGIC = 0x42585232;
+    public static final int LEGACY_SECTOR_SIZE = 4096;
+
+    private static final int HEADER_START = 8; // magic + entry count
+    private static final int ENTRY_SIZE = 8; // sector offset + length
+
+    private final File file;
+    private final int numEntries;
+    private int sectorSize;
+    private int headerSectors;
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+
+    private final int[] offsets;
+    private final int[] lengths;
+    private final BitSet usedSectors = new BitSet();
+
+    /**
+     * Entries changed since the last force(), whose header entries have not been written yet.
+     */
+    private final BitSet dirtyEntries = new BitSet();
+
+    /**
+     * Sectors that are no longer used, but are still used by the header on the disk.  Freed by force().
+     */
+    private final BitSet pendingFree = new BitSet();
+
+    private final ByteBuffer entryBuf = ByteBuffer.allocate(ENTRY_SIZE);
+
+    /**
+     * Opens a sector file, creating it if it does not exist.
+     *
+     * @param file       The file to open
+     * @param numEntries The number of entries in the file
+     * @throws IOException If the file cannot be opened or is not a sector file with the same number of entries
+     */
+    public SectorFile(File file, int numEntries) throws IOException {
+        this.file = file;
+        this.numEntries = numEntries;
+        this.offsets = new int[numEntries];
+        this.lengths = new int[numEntries];
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        try {
+            if (channel.size() == 0) {
+                setSectorSize(SECTOR_SIZE);
+                createHeader();
+            } else {
+                readHeader();
+            }
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    public synchronized boolean has(int entry) {
+        return lengths[entry] > 0;
+    }
+
+    /**
+     * Reads an entry.
+     *
+     * @param entry The entry to read
+     * @return Return the bytes of the entry, or null if it does not exist
+     * @throws IOException If the entry cannot be read
+     */
+    public synchronized byte[] read(int entry) throws IOException {
+        int length = lengths[entry];
+        if (length == 0) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        readFully(ByteBuffer.wrap(data), (long) offsets[entry] * sectorSize);
+        return data;
+    }
+
+    /**
+     * Writes an entry to the first free run of sectors that is large enough.  The entry is not durable, and its old
+     * version is still the one on the disk, until force() is called.
+     *
+     * @param entry  The entry to write
+     * @param data   The buffer holding the entry
+     * @param length The number of bytes of data to write
+     * @throws IOException If the entry cannot be written
+     */
+    public synchronized void write(int entry, byte[] data, int length) throws IOException {
+        if (length <= 0) {
+            delete(entry);
+            return;
+        }
+        int needed = sectorsFor(length);
+        int offset = findFreeRun(needed);
+        usedSectors.set(offset, offset + needed);
+        try {
+            writeFully(ByteBuffer.wrap(data, 0, length), (long) offset * sectorSize);
+        } catch (IOException e) {
+            usedSectors.clear(offset, offset + needed);
+            throw e;
+        }
+        release(entry);
+        offsets[entry] = offset;
+        lengths[entry] = length;
+        dirtyEntries.set(entry);
+    }
+
+    /**
+     * Removes an entry and frees its sectors.  The entry is still on the disk until force() is called.
+     *
+     * @param entry The entry to remove
+     */
+    public synchronized void delete(int entry) {
+        if (lengths[entry] > 0) {
+            release(entry);
+            offsets[entry] = 0;
+            lengths[entry] = 0;
+            dirtyEntries.set(entry);
+        }
+    }
+
+    /**
+     * Forces all written data to the disk, then writes and forces the header entries of the entries changed since the
+     * last call.
+     *
+     * @throws IOException If the data or header cannot be written
+     */
+    public synchronized void force() throws IOException {
+        if (dirtyEntries.isEmpty()) {
+            return;
+        }
+        channel.force(false);
+        for (int entry = dirtyEntries.nextSetBit(0); entry >= 0; entry = dirtyEntries.nextSetBit(entry + 1)) {
+            writeEntry(entry, offsets[entry], lengths[entry]);
+        }
+        channel.force(false);
+        dirtyEntries.clear();
+        usedSectors.andNot(pendingFree);
+        pendingFree.clear();
+    }
+
+    /**
+     * Forces any changes, then closes the file.
+     *
+     * @throws IOException If the changes cannot be forced or the file cannot be closed
+     */
+    public void close() throws IOException {
+        try {
+            force();
+        } finally {
+            raf.close();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getNumEntries() {
+        return numEntries;
+    }
+
+    public int getSectorSize() {
+        return sectorSize;
+    }
+
+    /**
+     * Checks if a magic number belongs to a sector file of any sector size.
+     *
+     * @param magic The first int of the file
+     * @return Return true if the file is a sector file
+     */
+    public static boolean isSectorFile(int magic) {
+        return magic == MAGIC || magic == LEGACY_MAGIC;
+    }
+
+    /**
+     * Gets the number of bytes an entry takes up in a new sector file, which is its length rounded up to whole sectors.
+     *
+     * @param length The length of the entry in bytes
+     * @return Return the number of bytes on the disk
+     */
+    public static long getDiskSize(int length) {
+        return (long) ((length + SECTOR_SIZE - 1) / SECTOR_SIZE) * SECTOR_SIZE;
+    }
+
+    private void setSectorSize(int sectorSize) {
+        this.sectorSize = sectorSize;
+        this.headerSectors = sectorsFor(HEADER_START + numEntries * ENTRY_SIZE);
+    }
+
+    private void createHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(headerSectors * sectorSize);
+        header.putInt(MAGIC);
+        header.putInt(numEntries);
+        header.rewind();
+        writeFully(header, 0);
+        usedSectors.set(0, headerSectors);
+    }
+
+    private void readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_START + numEntries * ENTRY_SIZE);
+        readFully(header, 0);
+        header.rewind();
+        int magic = header.getInt();
+        if (magic == MAGIC) {
+            setSectorSize(SECTOR_SIZE);
+        } else if (magic == LEGACY_MAGIC) {
+            setSectorSize(LEGACY_SECTOR_SIZE);
+        } else {
+            throw new IOException("Not a sector file: " + file.getPath());
+        }
+        int count = header.getInt();
+        if (count != numEntries) {
+            throw new IOException("Sector file " + file.getPath() + " has " + count + " entries, expected " + numEntries + "!");
+        }
+        usedSectors.set(0, headerSectors);
+        long fileSectors = sectorsFor(channel.size());
+        for (int entry = 0; entry < numEntries; entry++) {
+            int offset = header.getInt();
+            int length = header.getInt();
+            if (length <= 0) {
+                continue;
+            }
+            int sectors = sectorsFor(length);
+            int nextUsed = usedSectors.nextSetBit(offset);
+            //drop entries that point outside of the file or into another entry, instead of handing out their sectors twice
+            if (offset < headerSectors || offset + sectors > fileSectors || (nextUsed >= 0 && nextUsed < offset + sectors)) {
+                logger.logWarning("Invalid entry " + entry + " in " + file.getPath() + "!  It will be discarded.");
+                continue;
+            }
+            offsets[entry] = offset;
+            lengths[entry] = length;
+            usedSectors.set(offset, offset + sectors);
+        }
+    }
+
+    private void writeEntry(int entry, int offset, int length) throws IOException {
+        entryBuf.clear();
+        entryBuf.putInt(offset);
+        entryBuf.putInt(length);
+        entryBuf.flip();
+        writeFully(entryBuf, HEADER_START + (long) entry * ENTRY_SIZE);
+    }
+
+    /**
+     * Frees the sectors of the current version of an entry.  If the header on the disk still uses them, they are only
+     * freed by the next force().
+     */
+    private void release(int entry) {
+        int allocated = sectorsFor(lengths[entry]);
+        if (allocated > 0) {
+            if (dirtyEntries.get(entry)) { //only written since the last force, so nothing on the disk uses them
+                usedSectors.clear(offsets[entry], offsets[entry] + allocated);
+            } else {
+                pendingFree.set(offsets[entry], offsets[entry] + allocated);
+            }
+        }
+    }
+
+    private int findFreeRun(int sectors) {
+        int start = usedSectors.nextClearBit(headerSectors);
+        while (true) {
+            int end = usedSectors.nextSetBit(start);
+            if (end < 0 || end - start >= sectors) {
+                return start;
+            }
+            start = usedSectors.nextClearBit(end);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of " + file.getPath() + "!");
+            }
+            position += read;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private int sectorsFor(long bytes) {
+        return (int) ((bytes + sectorSize - 1) / sectorSize);
+    }
+}
@@ -7,6 +7,8 @@ import net.acomputerdog.boxle.save.util.BlockMap;
 import net.acomputerdog.boxle.world.World;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 
 public class WorldMetaFile {
     private final World world;
@@ -45,14 +47,20 @@ public class WorldMetaFile {
 
     }
 
-    public void save() throws IOException {
+    /**
+     * Saves the metadata to a temporary file, forces it, and then replaces the old file with it, so a crash leaves
+     * either the old or the new metadata.
+     */
+    public synchronized void save() throws IOException {
         DataOutputStream out = null;
         if (playerLoc == null || playerRot == null) {
             playerLoc = Boxle.instance().getClient().getPlayer().getLocation();
             playerRot = Boxle.instance().getClient().getPlayer().getRotation();
         }
+        File tempFile = new File(file.getPath() + ".tmp");
         try {
-            out = new DataOutputStream(new FileOutputStream(file));
+            FileOutputStream fileOut = new FileOutputStream(tempFile);
+            out = new DataOutputStream(new BufferedOutputStream(fileOut));
 
             out.writeFloat(playerLoc.x);
             out.writeFloat(playerLoc.y);
@@ -62,6 +70,8 @@ public class WorldMetaFile {
             out.writeFloat(playerRot.z);
             blockMap.save(out);
 
+            out.flush();
+            fileOut.getFD().sync();
             out.close();
         } finally {
             if (out != null) {
@@ -70,6 +80,7 @@ public class WorldMetaFile {
                 } catch (IOException ignored) {}
             }
         }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
     }
 
     public BlockMap getBlockMap() {
@@ -0,0 +1,121 @@
+package net.acomputerdog.boxle.world;
+
+import net.acomputerdog.boxle.block.block.Block;
+import net.acomputerdog.boxle.block.block.Blocks;
+
+/**
+ * Reads and writes the blocks of a world by global location without allocating.  Remembers the last chunk it used, so
+ * runs of accesses in one chunk skip the ChunkTable, and steps into neighboring chunks through their neighbor links.
+ * <p>
+ * Not thread-safe.  Each thread or task should create its own.
+ */
+public class BlockAccessor {
+    private final World world;
+
+    private Chunk lastChunk;
+    private int lastX;
+    private int lastY;
+    private int lastZ;
+
+    public BlockAccessor(World world) {
+        if (world == null) throw new IllegalArgumentException("World cannot be null!");
+        this.world = world;
+    }
+
+    /**
+     * Gets the chunk containing a global location.
+     *
+     * @param x Global x-location
+     * @param y Global y-location
+     * @param z Global z-location
+     * @return Return the chunk, or null if it is not loaded
+     */
+    public Chunk getChunkAt(int x, int y, int z) {
+        int cX = x >> Chunk.CHUNK_SHIFT;
+        int cY = y >> Chunk.CHUNK_SHIFT;
+        int cZ = z >> Chunk.CHUNK_SHIFT;
+        Chunk chunk = lastChunk;
+        if (chunk != null && chunk.isLoaded()) {
+            int dX = cX - lastX;
+            int dY = cY - lastY;
+            int dZ = cZ - lastZ;
+            if (dX == 0 && dY == 0 && dZ == 0) {
+                return chunk;
+            }
+            if (dX >= -1 && dX <= 1 && dY >= -1 && dY <= 1 && dZ >= -1 && dZ <= 1) {
+                Chunk neighbor = chunk.getNeighbor(dX, dY, dZ);
+                if (neighbor != null) {
+                    return remember(neighbor, cX, cY, cZ);
+                }
+            }
+        }
+        chunk = world.getChunks().getChunk(cX, cY, cZ);
+        if (chunk != null) {
+            remember(chunk, cX, cY, cZ);
+        }
+        return chunk;
+    }
+
+    /**
+     * Gets the runtime ID of the block at a global location.
+     *
+     * @param x Global x-location
+     * @param y Global y-location
+     * @param z Global z-location
+     * @return Return the runtime ID of the block, or the ID of air if the chunk is not loaded
+     */
+    public int getBlockId(int x, int y, int z) {
+        Chunk chunk = getChunkAt(x, y, z);
+        if (chunk == null) {
+            return Blocks.air.getRuntimeId();
+        }
+        return chunk.getBlockIdAt(x & Chunk.CHUNK_MASK, y & Chunk.CHUNK_MASK, z & Chunk.CHUNK_MASK);
+    }
+
+    /**
+     * Gets the block at a global location.
+     *
+     * @param x Global x-location
+     * @param y Global y-location
+     * @param z Global z-location
+     * @return Return the block, or air if the chunk is not loaded
+     */
+    public Block getBlock(int x, int y, int z) {
+        return Blocks.getBlock(getBlockId(x, y, z));
+    }
+
+    public boolean setBlock(int x, int y, int z, Block block) {
+        return setBlock(x, y, z, block, false);
+    }
+
+    /**
+     * Sets the block at a global location.
+     *
+     * @param x       Global x-location
+     * @param y       Global y-location
+     * @param z       Global z-location
+     * @param block   The block to set
+     * @param instant If true, the chunk is rebuilt immediately
+     * @return Return true if the block was set, false if the chunk is not loaded
+     */
+    public boolean setBlock(int x, int y, int z, Block block, boolean instant) {
+        Chunk chunk = getChunkAt(x, y, z);
+        if (chunk == null) {
+            return false;
+        }
+        chunk.setBlockAt(x & Chunk.CHUNK_MASK, y & Chunk.CHUNK_MASK, z & Chunk.CHUNK_MASK, block, instant);
+        return true;
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    private Chunk remember(Chunk chunk, int cX, int cY, int cZ) {
+        lastChunk = chunk;
+        lastX = cX;
+        lastY = cY;
+        lastZ = cZ;
+        return chunk;
+    }
+}
@@ -1,12 +1,20 @@
 package net.acomputerdog.boxle.world;
 
 import net.acomputerdog.boxle.block.block.Block;
+import net.acomputerdog.boxle.block.block.Blocks;
 import net.acomputerdog.boxle.main.Boxle;
 import net.acomputerdog.boxle.math.vec.Vec3i;
 import net.acomputerdog.boxle.math.vec.VecPool;
 import net.acomputerdog.boxle.render.util.ChunkNode;
 import net.acomputerdog.boxle.world.structure.BlockStorage;
-import net.acomputerdog.boxle.world.structure.block.SimpleBlockStorage;
+import net.acomputerdog.boxle.world.structure.ChunkMap;
+import net.acomputerdog.boxle.world.structure.block.PaletteBlockStorage;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A 16 by 16 chunk of a world
@@ -18,11 +26,45 @@ public class Chunk implements Comparable<Chunk> {
      */
     public static final int CHUNK_SIZE = 16;
 
+    /**
+     * log2(CHUNK_SIZE).  Shifting a global coordinate right by this gives the chunk coordinate.
+     */
+    public static final int CHUNK_SHIFT = 4;
+
+    /**
+     * Masks a global coordinate to a coordinate inside its chunk.
+     */
+    public static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
     /**
      * The total volume of a chunk.
      */
     public static final int CHUNK_VOLUME = CHUNK_SIZE * CHUNK_SIZE * CHUNK_SIZE;
 
+    /**
+     * Gets the index of a block in the arrays used by the bulk block methods.  Columns are contiguous.
+     *
+     * @param x X-location
+     * @param y Y-location
+     * @param z Z-location
+     * @return Return the index of the block
+     */
+    public static int getBlockIndex(int x, int y, int z) {
+        return (x * CHUNK_SIZE * CHUNK_SIZE) + (z * CHUNK_SIZE) + y;
+    }
+
+    /**
+     * Gets the index of a neighbor in the neighbor table.
+     *
+     * @param x X-offset of the neighbor, from -1 to 1
+     * @param y Y-offset of the neighbor, from -1 to 1
+     * @param z Z-offset of the neighbor, from -1 to 1
+     * @return Return the index of the neighbor
+     */
+    public static int getNeighborIndex(int x, int y, int z) {
+        return ((x + 1) * 9) + ((y + 1) * 3) + (z + 1);
+    }
+
     /**
      * The world that contains this Chunk.
      */
@@ -33,6 +75,11 @@ public class Chunk implements Comparable<Chunk> {
      */
     private final Vec3i location;
 
+    /**
+     * The location of this chunk, packed by ChunkMap.pack()
+     */
+    private final long key;
+
     /**
      * Blocks and data for this Chunk
      */
@@ -47,6 +94,52 @@ public class Chunk implements Comparable<Chunk> {
 
     private boolean isModifiedFromLoad = false;
 
+    /**
+     * Local y of the highest non-transparent block of each column, or -1 if a column is empty.  Indexed by (x * CHUNK_SIZE) + z.
+     */
+    private final byte[] heightMap = new byte[CHUNK_SIZE * CHUNK_SIZE];
+
+    /**
+     * Number of blocks in this chunk that are not air.
+     */
+    private int nonAirCount = 0;
+
+    /**
+     * Number of blocks in this chunk that are not transparent.
+     */
+    private int opaqueCount = 0;
+
+    /**
+     * Write counter for lock-free readers.  Incremented before and after every change, so it is odd while a write is
+     * in progress and changes whenever the blocks do.
+     */
+    private final AtomicInteger version = new AtomicInteger(0);
+
+    /**
+     * Serializes writers.  Readers never take it.
+     */
+    private final Lock writeLock = new ReentrantLock();
+
+    /**
+     * Loaded chunks around this one, indexed by getNeighborIndex().  Kept up to date by ChunkTable.
+     */
+    private final AtomicReferenceArray<Chunk> neighbors = new AtomicReferenceArray<>(27);
+
+    /**
+     * Number of the 6 face-neighbors that are loaded.
+     */
+    private volatile int loadedFaceNeighbors = 0;
+
+    /**
+     * Number of the 26 neighbors (sharing a face, edge, or corner) that are loaded.
+     */
+    private volatile int loadedNeighbors = 0;
+
+    /**
+     * True while this chunk is in its world's ChunkTable.
+     */
+    private volatile boolean isLoaded = false;
+
     /**
      * Creates a new chunk.
      *
@@ -58,7 +151,9 @@ public class Chunk implements Comparable<Chunk> {
         if (location == null) throw new IllegalArgumentException("Location cannot be null!");
         this.world = world;
         this.location = VecPool.createVec3i(location); //new one needed for hashing stuff
-        blocks = new SimpleBlockStorage(this);
+        this.key = ChunkMap.pack(location.x, location.y, location.z);
+        blocks = new PaletteBlockStorage(this);
+        Arrays.fill(heightMap, (byte) -1); //all air
         chunkNode = new ChunkNode("chunk@" + location.asCoords());
     }
 
@@ -95,7 +190,46 @@ public class Chunk implements Comparable<Chunk> {
      * @param block The block to set.  Cannot be null.
      */
     public void setBlockAt(int x, int y, int z, Block block, boolean instant) {
-        blocks.setBlock(x, y, z, block);
+        beginWrite();
+        try {
+            int oldId = blocks.getBlockId(x, y, z);
+            blocks.setBlock(x, y, z, block);
+            updateCounts(oldId, blocks.getBlockId(x, y, z));
+            updateHeight(x, y, z);
+        } finally {
+            endWrite();
+        }
+        if (!instant) {
+            setNeedsRebuild(true);
+        } else {
+            Boxle.instance().getRenderEngine().addUpdateChunk(this);
+        }
+        setModifiedFromLoad(true);
+    }
+
+    /**
+     * Gets the runtime ID of the block at a location
+     *
+     * @param x X-location
+     * @param y Y-location
+     * @param z Z-location
+     * @return Return the runtime ID of the block at the given location
+     */
+    public int getBlockIdAt(int x, int y, int z) {
+        return blocks.getBlockId(x, y, z);
+    }
+
+    /**
+     * Sets the block at a location by its runtime ID
+     *
+     * @param x       X-location
+     * @param y       Y-location
+     * @param z       Z-location
+     * @param id      The runtime ID of the block to set.
+     * @param instant If true, the chunk is rebuilt immediately
+     */
+    public void setBlockIdAt(int x, int y, int z, int id, boolean instant) {
+        setBlockIdQuietly(x, y, z, id);
         if (!instant) {
             setNeedsRebuild(true);
         } else {
@@ -104,6 +238,245 @@ public class Chunk implements Comparable<Chunk> {
         setModifiedFromLoad(true);
     }
 
+    /**
+     * Sets a block by runtime ID without flagging this chunk for rebuilding or saving.  Used by WorldView, which flags
+     * each chunk once when it is finished.
+     */
+    void setBlockIdQuietly(int x, int y, int z, int id) {
+        beginWrite();
+        try {
+            int oldId = blocks.getBlockId(x, y, z);
+            blocks.setBlockId(x, y, z, id);
+            updateCounts(oldId, id);
+            updateHeight(x, y, z);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Fills a box with a block, flagging the chunk once.  Min coordinates are inclusive, max coordinates are exclusive.
+     *
+     * @param minX  Lowest X-location
+     * @param minY  Lowest Y-location
+     * @param minZ  Lowest Z-location
+     * @param maxX  Highest X-location, exclusive
+     * @param maxY  Highest Y-location, exclusive
+     * @param maxZ  Highest Z-location, exclusive
+     * @param block The block to fill with
+     */
+    public void fillBlocks(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Block block) {
+        int id = block.getRuntimeId();
+        minX = Math.max(minX, 0);
+        minY = Math.max(minY, 0);
+        minZ = Math.max(minZ, 0);
+        maxX = Math.min(maxX, CHUNK_SIZE);
+        maxY = Math.min(maxY, CHUNK_SIZE);
+        maxZ = Math.min(maxZ, CHUNK_SIZE);
+        beginWrite();
+        try {
+            for (int x = minX; x < maxX; x++) {
+                for (int z = minZ; z < maxZ; z++) {
+                    for (int y = minY; y < maxY; y++) {
+                        updateCounts(blocks.getBlockId(x, y, z), id);
+                    }
+                }
+            }
+            blocks.fill(minX, minY, minZ, maxX, maxY, maxZ, id);
+            for (int x = minX; x < maxX; x++) {
+                for (int z = minZ; z < maxZ; z++) {
+                    heightMap[(x * CHUNK_SIZE) + z] = (byte) scanColumn(x, z, CHUNK_SIZE - 1);
+                }
+            }
+        } finally {
+            endWrite();
+        }
+        world.getColumnHeights().updateChunk(this);
+        setNeedsRebuild(true);
+        setModifiedFromLoad(true);
+    }
+
+    /**
+     * Writes a full vertical column of blocks, flagging the chunk once.
+     *
+     * @param x   X-location of the column
+     * @param z   Z-location of the column
+     * @param ids CHUNK_SIZE runtime IDs, from y = 0 upwards
+     */
+    public void setColumn(int x, int z, int[] ids) {
+        beginWrite();
+        try {
+            for (int y = 0; y < CHUNK_SIZE; y++) {
+                updateCounts(blocks.getBlockId(x, y, z), ids[y]);
+            }
+            blocks.setColumn(x, z, ids);
+            setHeight(x, z, scanColumn(x, z, CHUNK_SIZE - 1));
+        } finally {
+            endWrite();
+        }
+        setNeedsRebuild(true);
+        setModifiedFromLoad(true);
+    }
+
+    /**
+     * Replaces every block in this chunk, flagging the chunk once.
+     *
+     * @param ids CHUNK_VOLUME runtime IDs, indexed by getBlockIndex()
+     */
+    public void importBlockIds(int[] ids) {
+        beginWrite();
+        try {
+            blocks.importIds(ids);
+            countBlocks(ids);
+            for (int x = 0; x < CHUNK_SIZE; x++) {
+                for (int z = 0; z < CHUNK_SIZE; z++) {
+                    int base = getBlockIndex(x, 0, z);
+                    int height = -1;
+                    for (int y = CHUNK_SIZE - 1; y >= 0; y--) {
+                        if (!Blocks.isTransparent(ids[base + y])) {
+                            height = y;
+                            break;
+                        }
+                    }
+                    heightMap[(x * CHUNK_SIZE) + z] = (byte) height;
+                }
+            }
+        } finally {
+            endWrite();
+        }
+        world.getColumnHeights().updateChunk(this);
+        setNeedsRebuild(true);
+        setModifiedFromLoad(true);
+    }
+
+    /**
+     * Replaces every block in this chunk using a heightmap that was saved with it, flagging the chunk once.
+     *
+     * @param ids       CHUNK_VOLUME runtime IDs, indexed by getBlockIndex()
+     * @param heightMap CHUNK_SIZE * CHUNK_SIZE heights, as returned by getHeightMap()
+     */
+    public void importBlockIds(int[] ids, byte[] heightMap) {
+        beginWrite();
+        try {
+            blocks.importIds(ids);
+            countBlocks(ids);
+            System.arraycopy(heightMap, 0, this.heightMap, 0, this.heightMap.length);
+        } finally {
+            endWrite();
+        }
+        world.getColumnHeights().updateChunk(this);
+        setNeedsRebuild(true);
+        setModifiedFromLoad(true);
+    }
+
+    /**
+     * Copies the heightmap of this chunk.
+     *
+     * @param out Array of at least CHUNK_SIZE * CHUNK_SIZE bytes, indexed by (x * CHUNK_SIZE) + z
+     * @return Return out
+     */
+    public byte[] getHeightMap(byte[] out) {
+        System.arraycopy(heightMap, 0, out, 0, heightMap.length);
+        return out;
+    }
+
+    /**
+     * Copies every block in this chunk into an array.
+     *
+     * @param ids Array of at least CHUNK_VOLUME ints, indexed by getBlockIndex()
+     * @return Return ids
+     */
+    public int[] exportBlockIds(int[] ids) {
+        return blocks.exportIds(ids);
+    }
+
+    /**
+     * Takes an unchanging copy of the blocks in this chunk, for use by other threads while this chunk keeps changing.
+     * The block data is only copied when this chunk is next changed, so this is cheap.
+     *
+     * @return Return the snapshot
+     */
+    public ChunkSnapshot snapshot() {
+        writeLock.lock();
+        try {
+            return new ChunkSnapshot(this, version.get(), blocks.snapshot(), heightMap.clone(), nonAirCount, opaqueCount);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the write version of this chunk.  The version is odd while a write is in progress, and changes every time
+     * a block is changed.
+     *
+     * @return Return the current version
+     */
+    public int getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Copies every block in this chunk into an array without blocking writers.  Safe to call from any thread; the copy
+     * is retried until no write happened during it, so the result is always a consistent view of the chunk.
+     *
+     * @param ids       Array of at least CHUNK_VOLUME ints, indexed by getBlockIndex()
+     * @param heightMap Array of at least CHUNK_SIZE * CHUNK_SIZE bytes to copy the heightmap into, or null
+     * @return Return the version that was read
+     */
+    public int readBlockIds(int[] ids, byte[] heightMap) {
+        while (true) {
+            int stamp = version.get();
+            if ((stamp & 1) == 0) {
+                RuntimeException error = null;
+                try {
+                    blocks.exportIds(ids);
+                    if (heightMap != null) {
+                        System.arraycopy(this.heightMap, 0, heightMap, 0, this.heightMap.length);
+                    }
+                } catch (RuntimeException e) {
+                    error = e; //storage may be mid-resize, only an error if no write happened
+                }
+                if (validate(stamp)) {
+                    if (error != null) {
+                        throw error;
+                    }
+                    return stamp;
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Gets the runtime ID of a block without blocking writers.  Safe to call from any thread.
+     *
+     * @param x X-location
+     * @param y Y-location
+     * @param z Z-location
+     * @return Return the runtime ID of the block
+     */
+    public int readBlockIdAt(int x, int y, int z) {
+        while (true) {
+            int stamp = version.get();
+            if ((stamp & 1) == 0) {
+                int id = -1;
+                RuntimeException error = null;
+                try {
+                    id = blocks.getBlockId(x, y, z);
+                } catch (RuntimeException e) {
+                    error = e; //storage may be mid-resize, only an error if no write happened
+                }
+                if (validate(stamp)) {
+                    if (error != null) {
+                        throw error;
+                    }
+                    return id;
+                }
+            }
+            Thread.yield();
+        }
+    }
+
     /**
      * Gets the world that contains this chunk.
      *
@@ -155,7 +528,17 @@ public class Chunk implements Comparable<Chunk> {
     }
 
     public void clear(Block block, boolean instant) {
-        blocks.clear(block);
+        beginWrite();
+        try {
+            blocks.clear(block);
+            int id = blocks.getBlockId(0, 0, 0);
+            nonAirCount = (id == Blocks.air.getRuntimeId()) ? 0 : CHUNK_VOLUME;
+            opaqueCount = Blocks.isTransparent(id) ? 0 : CHUNK_VOLUME;
+            Arrays.fill(heightMap, (byte) (Blocks.isTransparent(id) ? -1 : CHUNK_SIZE - 1));
+        } finally {
+            endWrite();
+        }
+        world.getColumnHeights().updateChunk(this);
         if (!instant) {
             setNeedsRebuild(true);
         } else {
@@ -164,6 +547,24 @@ public class Chunk implements Comparable<Chunk> {
         setModifiedFromLoad(true);
     }
 
+    /**
+     * Checks if this chunk is filled with a single block type.
+     *
+     * @return Return true if every block in this chunk is the same
+     */
+    public boolean isUniform() {
+        return blocks.isUniform();
+    }
+
+    /**
+     * Gets the block filling this chunk.
+     *
+     * @return Return the only block in this chunk, or null if the chunk is not uniform
+     */
+    public Block getUniformBlock() {
+        return blocks.getUniformBlock();
+    }
+
     public boolean isGenerated() {
         return isGenerated;
     }
@@ -192,12 +593,204 @@ public class Chunk implements Comparable<Chunk> {
         return location.z;
     }
 
+    /**
+     * Gets a loaded chunk next to this one.
+     *
+     * @param x X-offset of the neighbor, from -1 to 1
+     * @param y Y-offset of the neighbor, from -1 to 1
+     * @param z Z-offset of the neighbor, from -1 to 1
+     * @return Return the neighbor, or null if it is not loaded
+     */
+    public Chunk getNeighbor(int x, int y, int z) {
+        return neighbors.get(getNeighborIndex(x, y, z));
+    }
+
+    /**
+     * Sets or clears the link to a neighbor.  Called by ChunkTable when chunks are added or removed.
+     *
+     * @param x        X-offset of the neighbor, from -1 to 1
+     * @param y        Y-offset of the neighbor, from -1 to 1
+     * @param z        Z-offset of the neighbor, from -1 to 1
+     * @param neighbor The neighbor, or null if it was unloaded
+     */
+    public void setNeighbor(int x, int y, int z, Chunk neighbor) {
+        Chunk old = neighbors.getAndSet(getNeighborIndex(x, y, z), neighbor);
+        int distance = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        if (distance > 0 && (old == null) != (neighbor == null)) { //only changed while ChunkTable is locked
+            int change = (neighbor == null) ? -1 : 1;
+            loadedNeighbors += change;
+            if (distance == 1) {
+                loadedFaceNeighbors += change;
+            }
+        }
+    }
+
+    /**
+     * Checks if this chunk is currently in its world's ChunkTable.
+     *
+     * @return Return true if the chunk is loaded
+     */
+    public boolean isLoaded() {
+        return isLoaded;
+    }
+
+    /**
+     * Called by ChunkTable when this chunk is added or removed.
+     *
+     * @param loaded True if the chunk was added
+     */
+    public void setLoaded(boolean loaded) {
+        isLoaded = loaded;
+    }
+
+    /**
+     * Gets the number of chunks sharing a face with this one that are loaded.
+     *
+     * @return Return the number of loaded face-neighbors, from 0 to 6
+     */
+    public int getLoadedFaceNeighbors() {
+        return loadedFaceNeighbors;
+    }
+
+    /**
+     * Checks if all 6 chunks sharing a face with this one are loaded.
+     *
+     * @return Return true if every face-neighbor is loaded
+     */
+    public boolean hasAllFaceNeighbors() {
+        return loadedFaceNeighbors == 6;
+    }
+
+    /**
+     * Checks if all 26 chunks around this one are loaded, which a WorldView of this chunk needs to write to any of them.
+     *
+     * @return Return true if every neighbor is loaded
+     */
+    public boolean hasAllNeighbors() {
+        return loadedNeighbors == 26;
+    }
+
+    /**
+     * Gets the location of this chunk packed into a long, as used by ChunkMap.
+     *
+     * @return Return the packed location
+     */
+    public long getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the local y-location of the highest non-transparent block in a column.
+     *
+     * @param x X-location
+     * @param z Z-location
+     * @return Return the height of the column, or -1 if it has no ground
+     */
     public int getGroundHeight(int x, int z) {
         if (x >= CHUNK_SIZE || z >= CHUNK_SIZE || x < 0 || z < 0) {
             throw new IllegalArgumentException("Cannot get a ground height out of chunk bounds!");
         }
-        for (int y = CHUNK_SIZE - 1; y >= 0; y--) {
-            if (!blocks.getBlock(x, y, z).isTransparent()) {
+        return heightMap[(x * CHUNK_SIZE) + z];
+    }
+
+    /**
+     * Gets the number of blocks in this chunk that are not air.
+     *
+     * @return Return the number of non-air blocks
+     */
+    public int getNonAirCount() {
+        return nonAirCount;
+    }
+
+    /**
+     * Checks if this chunk contains only air.
+     *
+     * @return Return true if every block is air
+     */
+    public boolean isAllAir() {
+        return nonAirCount == 0;
+    }
+
+    /**
+     * Checks if every block in this chunk is opaque, so nothing behind it can be seen.
+     *
+     * @return Return true if no block in this chunk is transparent
+     */
+    public boolean isAllOpaque() {
+        return opaqueCount == CHUNK_VOLUME;
+    }
+
+    private void updateCounts(int oldId, int newId) {
+        if (oldId != newId) {
+            int airId = Blocks.air.getRuntimeId();
+            nonAirCount += (oldId == airId ? 0 : -1) + (newId == airId ? 0 : 1);
+            opaqueCount += (Blocks.isTransparent(oldId) ? 0 : -1) + (Blocks.isTransparent(newId) ? 0 : 1);
+        }
+    }
+
+    private void countBlocks(int[] ids) {
+        int airId = Blocks.air.getRuntimeId();
+        int nonAir = 0;
+        int opaque = 0;
+        for (int index = 0; index < CHUNK_VOLUME; index++) {
+            int id = ids[index];
+            if (id != airId) {
+                nonAir++;
+            }
+            if (!Blocks.isTransparent(id)) {
+                opaque++;
+            }
+        }
+        nonAirCount = nonAir;
+        opaqueCount = opaque;
+    }
+
+    private void beginWrite() {
+        writeLock.lock();
+        version.incrementAndGet();
+    }
+
+    private void endWrite() {
+        version.incrementAndGet();
+        writeLock.unlock();
+    }
+
+    /**
+     * Checks that no write started since a version was read.  The compare-and-set is a full fence, so it cannot be
+     * reordered before the reads it is validating.
+     */
+    private boolean validate(int stamp) {
+        return version.compareAndSet(stamp, stamp);
+    }
+
+    /**
+     * Updates the heightmap after a single block changed.
+     */
+    private void updateHeight(int x, int y, int z) {
+        int height = heightMap[(x * CHUNK_SIZE) + z];
+        if (!Blocks.isTransparent(blocks.getBlockId(x, y, z))) {
+            if (y > height) {
+                setHeight(x, z, y);
+            }
+        } else if (y == height) {
+            setHeight(x, z, scanColumn(x, z, y - 1));
+        }
+    }
+
+    private void setHeight(int x, int z, int height) {
+        int index = (x * CHUNK_SIZE) + z;
+        if (heightMap[index] != height) {
+            heightMap[index] = (byte) height;
+            world.getColumnHeights().updateColumn(this, x, z, height);
+        }
+    }
+
+    /**
+     * Finds the highest non-transparent block in a column, starting at startY and moving down.
+     */
+    private int scanColumn(int x, int z, int startY) {
+        for (int y = startY; y >= 0; y--) {
+            if (!Blocks.isTransparent(blocks.getBlockId(x, y, z))) {
                 return y;
             }
         }
@@ -235,7 +828,7 @@ public class Chunk implements Comparable<Chunk> {
 
     @Override
     public int compareTo(Chunk o) {
-        return this.hashCode() - o.hashCode();
+        return Long.compare(key, o.key); //hash codes can collide, which would merge chunks in sorted sets
     }
 
 }
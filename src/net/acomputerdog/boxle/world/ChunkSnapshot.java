@@ -0,0 +1,133 @@
+package net.acomputerdog.boxle.world;
+
+import net.acomputerdog.boxle.block.block.Block;
+import net.acomputerdog.boxle.world.structure.BlockStorage;
+
+/**
+ * An unchanging copy of the blocks of a chunk, taken by Chunk.snapshot().  The block data is shared with the chunk
+ * until the chunk next changes, so snapshots are cheap to take.  Safe to read from any thread.
+ */
+public class ChunkSnapshot {
+    private final Chunk chunk;
+    private final int xLoc;
+    private final int yLoc;
+    private final int zLoc;
+
+    /**
+     * Version of the chunk when this snapshot was taken.
+     */
+    private final int version;
+
+    private final BlockStorage blocks;
+    private final byte[] heightMap;
+    private final int nonAirCount;
+    private final int opaqueCount;
+
+    ChunkSnapshot(Chunk chunk, int version, BlockStorage blocks, byte[] heightMap, int nonAirCount, int opaqueCount) {
+        this.chunk = chunk;
+        this.xLoc = chunk.getXLoc();
+        this.yLoc = chunk.getYLoc();
+        this.zLoc = chunk.getZLoc();
+        this.version = version;
+        this.blocks = blocks;
+        this.heightMap = heightMap;
+        this.nonAirCount = nonAirCount;
+        this.opaqueCount = opaqueCount;
+    }
+
+    /**
+     * Gets the chunk this snapshot was taken from.  The chunk may have changed since.
+     *
+     * @return Return the chunk
+     */
+    public Chunk getChunk() {
+        return chunk;
+    }
+
+    public int getXLoc() {
+        return xLoc;
+    }
+
+    public int getYLoc() {
+        return yLoc;
+    }
+
+    public int getZLoc() {
+        return zLoc;
+    }
+
+    /**
+     * Gets the version of the chunk that this snapshot holds.
+     *
+     * @return Return the version, as returned by Chunk.getVersion() when this snapshot was taken
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Checks if the chunk has changed since this snapshot was taken.
+     *
+     * @return Return true if this snapshot is out of date
+     */
+    public boolean isStale() {
+        return chunk.getVersion() != version;
+    }
+
+    public Block getBlockAt(int x, int y, int z) {
+        return blocks.getBlock(x, y, z);
+    }
+
+    public int getBlockIdAt(int x, int y, int z) {
+        return blocks.getBlockId(x, y, z);
+    }
+
+    /**
+     * Copies every block in this snapshot into an array.
+     *
+     * @param ids Array of at least Chunk.CHUNK_VOLUME ints, indexed by Chunk.getBlockIndex()
+     * @return Return ids
+     */
+    public int[] exportBlockIds(int[] ids) {
+        return blocks.exportIds(ids);
+    }
+
+    /**
+     * Copies the heightmap of this snapshot.
+     *
+     * @param out Array of at least CHUNK_SIZE * CHUNK_SIZE bytes, indexed by (x * CHUNK_SIZE) + z
+     * @return Return out
+     */
+    public byte[] getHeightMap(byte[] out) {
+        System.arraycopy(heightMap, 0, out, 0, heightMap.length);
+        return out;
+    }
+
+    public int getGroundHeight(int x, int z) {
+        return heightMap[(x * Chunk.CHUNK_SIZE) + z];
+    }
+
+    public boolean isUniform() {
+        return blocks.isUniform();
+    }
+
+    public Block getUniformBlock() {
+        return blocks.getUniformBlock();
+    }
+
+    public int getNonAirCount() {
+        return nonAirCount;
+    }
+
+    public boolean isAllAir() {
+        return nonAirCount == 0;
+    }
+
+    public boolean isAllOpaque() {
+        return opaqueCount == Chunk.CHUNK_VOLUME;
+    }
+
+    public String asCoords() {
+        return xLoc + "," + yLoc + "," + zLoc;
+    }
+}
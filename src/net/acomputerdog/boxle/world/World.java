@@ -10,19 +10,19 @@ import net.acomputerdog.boxle.math.vec.VecPool;
 import net.acomputerdog.boxle.physics.PhysicsEngine;
 import net.acomputerdog.boxle.render.util.ChunkNode;
 import net.acomputerdog.boxle.save.SaveManager;
-import net.acomputerdog.boxle.save.io.IOThread;
+import net.acomputerdog.boxle.save.io.WorldIO;
 import net.acomputerdog.boxle.save.world.WorldSave;
 import net.acomputerdog.boxle.save.world.files.Region;
 import net.acomputerdog.boxle.world.gen.CellsWorldGen;
 import net.acomputerdog.boxle.world.gen.WorldGen;
 import net.acomputerdog.boxle.world.gen.structures.Structures;
 import net.acomputerdog.boxle.world.structure.ChunkTable;
+import net.acomputerdog.boxle.world.structure.ColumnHeightMap;
+import net.acomputerdog.boxle.world.structure.RegionCache;
 import net.acomputerdog.core.logger.CLogger;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentSkipListSet;
 
 /**
  * A world, made of blocks :)
@@ -56,13 +56,16 @@ public class World {
 
     private final Map<Integer, Entity> entities = new HashMap<>();
 
-    private final IOThread saveIO;
+    private final WorldIO saveIO;
 
     private final WorldSave worldSave;
 
-    private final Map<Vec3i, Region> regionMap = new ConcurrentHashMap<>();
+    private final RegionCache regionCache;
 
-    private final Set<Region> regionSet = new ConcurrentSkipListSet<>();
+    /**
+     * Heights of every column of loaded chunks.
+     */
+    private final ColumnHeightMap columnHeights = new ColumnHeightMap();
 
     /**
      * Creates a new instance of this World.
@@ -71,6 +74,21 @@ public class World {
      * @param worldSave
      */
     public World(Boxle boxle, String name, WorldSave worldSave) {
+        this(boxle, name, worldSave, true);
+    }
+
+    /**
+     * Creates a world that is only kept in memory.  It has no save and no I/O workers, so chunks are only added by
+     * createNewChunk() or addNewChunk(), and must not be saved.  Used by tools and benchmarks.
+     *
+     * @param boxle The Boxle instance that created this World.
+     * @param name  The name of this world.
+     */
+    public World(Boxle boxle, String name) {
+        this(boxle, name, null, false);
+    }
+
+    private World(Boxle boxle, String name, WorldSave worldSave, boolean createIO) {
         this.worldSave = worldSave;
         if (name == null) throw new IllegalArgumentException("Name cannot be null!");
         if (boxle == null) throw new IllegalArgumentException("Boxle instance must not be null!");
@@ -83,7 +101,8 @@ public class World {
         generator = new CellsWorldGen(name.hashCode());
         //generator = new SimplexWorldGen(name.hashCode());
         generator.addDecoration(Structures.tree);
-        saveIO = IOThread.createThread(this);
+        regionCache = new RegionCache(boxle.getGameConfig().regionCacheSize * 1024L * 1024L, boxle.getGameConfig().regionCacheMaxOpen);
+        saveIO = createIO ? WorldIO.createIO(this) : null;
     }
 
     public WorldSave getWorldSave() {
@@ -117,7 +136,7 @@ public class World {
         return physicsEngine;
     }
 
-    public IOThread getSaveIO() {
+    public WorldIO getSaveIO() {
         return saveIO;
     }
 
@@ -157,23 +176,24 @@ public class World {
     }
 
     public Block getBlockAt(int x, int y, int z) {
-        Vec3i vec = VecPool.getVec3i(x, y, z);
-        Block block = getBlockAt(vec);
-        VecPool.free(vec);
-        return block;
+        return Blocks.getBlock(getBlockIdAt(x, y, z));
     }
 
     public Block getBlockAt(Vec3i loc) {
-        Vec3i cLoc = CoordConverter.globalToChunk(loc.duplicate());
-        Chunk chunk = chunks.getChunk(cLoc);
-        Block block = null;
-        if (chunk != null) {
-            Vec3i bLoc = CoordConverter.globalToBlock(loc.duplicate());
-            block = chunk.getBlockAt(bLoc);
-            VecPool.free(bLoc);
+        return getBlockAt(loc.x, loc.y, loc.z);
+    }
+
+    /**
+     * Gets the runtime ID of the block at a global location.
+     *
+     * @return Return the runtime ID of the block, or the ID of air if the chunk is not loaded.
+     */
+    public int getBlockIdAt(int x, int y, int z) {
+        Chunk chunk = chunks.getChunk(CoordConverter.globalToChunk(x), CoordConverter.globalToChunk(y), CoordConverter.globalToChunk(z));
+        if (chunk == null) {
+            return Blocks.air.getRuntimeId();
         }
-        VecPool.free(cLoc);
-        return block == null ? Blocks.air : block;
+        return chunk.getBlockIdAt(CoordConverter.globalToBlock(x), CoordConverter.globalToBlock(y), CoordConverter.globalToBlock(z));
     }
 
     public void setBlockAt(int x, int y, int z, Block block) {
@@ -185,20 +205,43 @@ public class World {
     }
 
     public void setBlockAt(int x, int y, int z, Block block, boolean instant) {
-        Vec3i vec = VecPool.getVec3i(x, y, z);
-        setBlockAt(vec, block, instant);
-        VecPool.free(vec);
+        Chunk chunk = chunks.getChunk(CoordConverter.globalToChunk(x), CoordConverter.globalToChunk(y), CoordConverter.globalToChunk(z));
+        if (chunk != null) {
+            chunk.setBlockAt(CoordConverter.globalToBlock(x), CoordConverter.globalToBlock(y), CoordConverter.globalToBlock(z), block, instant);
+        }
     }
 
     public void setBlockAt(Vec3i loc, Block block, boolean instant) {
-        Vec3i cLoc = CoordConverter.globalToChunk(loc.duplicate());
-        Chunk chunk = chunks.getChunk(cLoc);
-        if (chunk != null) {
-            Vec3i bLoc = CoordConverter.globalToBlock(loc.duplicate());
-            chunk.setBlockAt(bLoc, block, instant);
-            VecPool.free(bLoc);
-        }
-        VecPool.free(cLoc);
+        setBlockAt(loc.x, loc.y, loc.z, block, instant);
+    }
+
+    /**
+     * Creates a BlockAccessor for reading or changing many nearby blocks of this world.
+     *
+     * @return Return a new BlockAccessor
+     */
+    public BlockAccessor createAccessor() {
+        return new BlockAccessor(this);
+    }
+
+    /**
+     * Gets the heightmap covering all loaded chunks.
+     *
+     * @return Return the ColumnHeightMap of this world
+     */
+    public ColumnHeightMap getColumnHeights() {
+        return columnHeights;
+    }
+
+    /**
+     * Gets the highest non-transparent block in a column of loaded chunks.
+     *
+     * @param x Global x-location
+     * @param z Global z-location
+     * @return Return the global y-location of the block, or ColumnHeightMap.NO_HEIGHT if the column has no loaded ground
+     */
+    public int getColumnHeight(int x, int z) {
+        return columnHeights.getHeight(x, z);
     }
 
     public CLogger getLogger() {
@@ -237,27 +280,33 @@ public class World {
     }
 
     public void removeRegion(Region region) {
-        regionSet.remove(region);
-        Vec3i loc = region.getLoc();
-        regionMap.remove(loc);
-        VecPool.free(loc);
+        regionCache.remove(region);
     }
 
     public Region getOrLoadRegion(int x, int y, int z) {
-        Vec3i vec = VecPool.getVec3i(x, y, z);
-        Region region = regionMap.get(vec);
+        Region region = regionCache.use(x, y, z);
         if (region == null) {
             WorldSave save = getWorldSave();
-            region = save.getRegion(x, y, z);
-            regionMap.put(vec, region);
-            regionSet.add(region);
+            Region newRegion = save.getRegion(x, y, z);
+            region = regionCache.add(newRegion);
+            if (region != newRegion) { //opened by another thread at the same time
+                newRegion.close();
+            }
         }
-        VecPool.free(vec);
         return region;
     }
 
+    /**
+     * Gets the open regions.
+     *
+     * @return Return a copy of the open regions
+     */
     public Set<Region> getRegionSet() {
-        return regionSet;
+        return new HashSet<>(regionCache.getRegions());
+    }
+
+    public RegionCache getRegionCache() {
+        return regionCache;
     }
 
     public Region getOrLoadRegionChunkLoc(int x, int y, int z) {
@@ -270,14 +319,11 @@ public class World {
     }
 
     public Region getRegion(int x, int y, int z) {
-        Vec3i vec = VecPool.getVec3i(x, y, z);
-        Region region = regionMap.get(vec);
-        VecPool.free(vec);
-        return region;
+        return regionCache.get(x, y, z);
     }
 
     public Region getRegion(Vec3i loc) {
-        return regionMap.get(loc);
+        return regionCache.get(loc.x, loc.y, loc.z);
     }
 
     @Override
@@ -0,0 +1,151 @@
+package net.acomputerdog.boxle.world;
+
+import net.acomputerdog.boxle.block.block.Block;
+import net.acomputerdog.boxle.block.block.Blocks;
+
+/**
+ * A view of a chunk and the 26 chunks around it, resolved once when the view is created.  Blocks are addressed by
+ * coordinates local to the center chunk, from -CHUNK_SIZE to (2 * CHUNK_SIZE) - 1 on each axis.
+ * <p>
+ * Changes made through a view do not flag their chunks one block at a time.  Call finish() when done to mark every
+ * changed chunk for rebuilding and saving.  Not thread-safe.
+ */
+public class WorldView {
+    private static final int chunkSize = Chunk.CHUNK_SIZE;
+
+    private final World world;
+    private final Chunk center;
+
+    /**
+     * The center chunk and its neighbors, indexed by Chunk.getNeighborIndex().  Unloaded neighbors are null.
+     */
+    private final Chunk[] chunks = new Chunk[27];
+
+    /**
+     * Chunks that were changed through this view.
+     */
+    private final boolean[] changed = new boolean[27];
+
+    /**
+     * Global location of block 0,0,0 of the center chunk.
+     */
+    private final int originX;
+    private final int originY;
+    private final int originZ;
+
+    public WorldView(Chunk center) {
+        if (center == null) throw new IllegalArgumentException("Chunk cannot be null!");
+        this.center = center;
+        this.world = center.getWorld();
+        this.originX = center.getXLoc() * chunkSize;
+        this.originY = center.getYLoc() * chunkSize;
+        this.originZ = center.getZLoc() * chunkSize;
+        for (int x = -1; x <= 1; x++) {
+            for (int y = -1; y <= 1; y++) {
+                for (int z = -1; z <= 1; z++) {
+                    chunks[Chunk.getNeighborIndex(x, y, z)] = (x == 0 && y == 0 && z == 0) ? center : center.getNeighbor(x, y, z);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the chunk containing a local location.
+     *
+     * @param x Local x-location
+     * @param y Local y-location
+     * @param z Local z-location
+     * @return Return the chunk, or null if it is not loaded or outside of this view
+     */
+    public Chunk getChunk(int x, int y, int z) {
+        int index = findIndex(x, y, z);
+        return index < 0 ? null : chunks[index];
+    }
+
+    /**
+     * Gets the runtime ID of the block at a local location.
+     *
+     * @param x Local x-location
+     * @param y Local y-location
+     * @param z Local z-location
+     * @return Return the runtime ID, or the ID of air if the location is not loaded or outside of this view
+     */
+    public int getBlockId(int x, int y, int z) {
+        Chunk chunk = getChunk(x, y, z);
+        if (chunk == null) {
+            return Blocks.air.getRuntimeId();
+        }
+        return chunk.getBlockIdAt(x & Chunk.CHUNK_MASK, y & Chunk.CHUNK_MASK, z & Chunk.CHUNK_MASK);
+    }
+
+    public Block getBlock(int x, int y, int z) {
+        return Blocks.getBlock(getBlockId(x, y, z));
+    }
+
+    /**
+     * Sets the block at a local location.  The chunk is not flagged until finish() is called.
+     *
+     * @param x     Local x-location
+     * @param y     Local y-location
+     * @param z     Local z-location
+     * @param block The block to set
+     * @return Return true if the block was set, false if the location is not loaded or outside of this view
+     */
+    public boolean setBlock(int x, int y, int z, Block block) {
+        int index = findIndex(x, y, z);
+        if (index < 0 || chunks[index] == null) {
+            return false;
+        }
+        chunks[index].setBlockIdQuietly(x & Chunk.CHUNK_MASK, y & Chunk.CHUNK_MASK, z & Chunk.CHUNK_MASK, block.getRuntimeId());
+        changed[index] = true;
+        return true;
+    }
+
+    /**
+     * Marks every chunk that was changed through this view as needing to be rebuilt and saved.
+     */
+    public void finish() {
+        for (int index = 0; index < chunks.length; index++) {
+            if (changed[index]) {
+                chunks[index].setNeedsRebuild(true);
+                chunks[index].setModifiedFromLoad(true);
+                changed[index] = false;
+            }
+        }
+    }
+
+    public Chunk getCenter() {
+        return center;
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    /**
+     * Gets the global x-location of local x-location 0.
+     *
+     * @return Return the global x-location of the center chunk
+     */
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginY() {
+        return originY;
+    }
+
+    public int getOriginZ() {
+        return originZ;
+    }
+
+    private static int findIndex(int x, int y, int z) {
+        int cX = x >> Chunk.CHUNK_SHIFT;
+        int cY = y >> Chunk.CHUNK_SHIFT;
+        int cZ = z >> Chunk.CHUNK_SHIFT;
+        if (cX < -1 || cX > 1 || cY < -1 || cY > 1 || cZ < -1 || cZ > 1) {
+            return -1;
+        }
+        return Chunk.getNeighborIndex(cX, cY, cZ);
+    }
+}
@@ -1,6 +1,7 @@
 package net.acomputerdog.boxle.world.gen;
 
 import net.acomputerdog.boxle.world.Chunk;
+import net.acomputerdog.boxle.world.WorldView;
 import net.acomputerdog.boxle.world.gen.structures.Structure;
 
 import java.util.LinkedList;
@@ -18,7 +19,8 @@ public abstract class AbstractWorldGen implements WorldGen {
     }
 
     @Override
-    public void generateDecorations(Chunk chunk) {
+    public void generateDecorations(WorldView view) {
+        Chunk chunk = view.getCenter();
         if (chunk.isDecorated()) {
             chunk.getWorld().getLogger().logWarning("Already decorated chunk at " + chunk.getLocation());
         } else {
@@ -26,7 +28,7 @@ public abstract class AbstractWorldGen implements WorldGen {
                 for (int y = 0; y < chunkSize; y++) {
                     for (int z = 0; z < chunkSize; z++) {
                         for (Structure structure : decorations) {
-                            structure.placeIfPossible(this, chunk, x, y, z);
+                            structure.placeIfPossible(this, view, x, y, z);
                         }
                     }
                 }
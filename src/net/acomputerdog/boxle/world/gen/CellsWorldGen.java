@@ -38,19 +38,24 @@ public class CellsWorldGen extends AbstractWorldGen {
             }
             int chunkX = cLoc.x * chunkSize;
             int chunkZ = cLoc.z * chunkSize;
+            int airId = Blocks.air.getRuntimeId();
+            int grassySteelId = Blocks.grassySteel.getRuntimeId();
+            int steelId = Blocks.steel.getRuntimeId();
+            int[] column = new int[chunkSize];
             for (int x = 0; x < chunkSize; x++) {
                 for (int z = 0; z < chunkSize; z++) {
                     int height = getGroundHeight(chunkX + x, chunkZ + z);
                     for (int y = 0; y < chunkSize; y++) {
                         int currY = y + chunkY;
                         if (currY > height) {
-                            chunk.setBlockAt(x, y, z, Blocks.air);
+                            column[y] = airId;
                         } else if (currY == height) {
-                            chunk.setBlockAt(x, y, z, Blocks.grassySteel);
+                            column[y] = grassySteelId;
                         } else {
-                            chunk.setBlockAt(x, y, z, Blocks.steel);
+                            column[y] = steelId;
                         }
                     }
+                    chunk.setColumn(x, z, column);
                 }
             }
         }
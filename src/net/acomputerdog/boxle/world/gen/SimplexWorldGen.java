@@ -28,6 +28,7 @@ public class SimplexWorldGen extends AbstractWorldGen {
             int chunkY = cLoc.y * chunkSize;
             int chunkX = cLoc.x * chunkSize;
             int chunkZ = cLoc.z * chunkSize;
+            int[] column = new int[chunkSize];
             for (int x = 0; x < chunkSize; x++) {
                 for (int z = 0; z < chunkSize; z++) {
                     for (int y = 0; y < chunkSize; y++) {
@@ -36,17 +37,18 @@ public class SimplexWorldGen extends AbstractWorldGen {
                         int currZ = z + chunkZ;
                         double val = getSimplex(currX, currY, currZ);
                         if (val < TERRAIN_PERCENTAGE) {
-                            chunk.setBlockAt(x, y, z, Blocks.air);
+                            column[y] = Blocks.air.getRuntimeId();
                         } else if (val < TERRAIN_PERCENTAGE + DIRT_THICKNESS) {
                             if (getSimplex(currX, currY + 1, currZ) < TERRAIN_PERCENTAGE) {
-                                chunk.setBlockAt(x, y, z, Blocks.grass);
+                                column[y] = Blocks.grass.getRuntimeId();
                             } else {
-                                chunk.setBlockAt(x, y, z, Blocks.dirt);
+                                column[y] = Blocks.dirt.getRuntimeId();
                             }
                         } else {
-                            chunk.setBlockAt(x, y, z, Blocks.stone);
+                            column[y] = Blocks.stone.getRuntimeId();
                         }
                     }
+                    chunk.setColumn(x, z, column);
                 }
             }
         }
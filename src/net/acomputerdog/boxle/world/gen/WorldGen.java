@@ -2,12 +2,18 @@ package net.acomputerdog.boxle.world.gen;
 
 import net.acomputerdog.boxle.math.vec.Vec3i;
 import net.acomputerdog.boxle.world.Chunk;
+import net.acomputerdog.boxle.world.WorldView;
 import net.acomputerdog.boxle.world.gen.structures.Structure;
 
 public interface WorldGen {
     public void generateTerrain(Chunk chunk);
 
-    public void generateDecorations(Chunk chunk);
+    /**
+     * Places decorations into the center chunk of a view.  Decorations may spill into the surrounding chunks.
+     *
+     * @param view View around the chunk to decorate
+     */
+    public void generateDecorations(WorldView view);
 
     public float getRainfall(Vec3i loc);
 
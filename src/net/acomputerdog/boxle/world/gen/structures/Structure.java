@@ -1,19 +1,23 @@
 package net.acomputerdog.boxle.world.gen.structures;
 
 import net.acomputerdog.boxle.world.Chunk;
+import net.acomputerdog.boxle.world.WorldView;
 import net.acomputerdog.boxle.world.gen.WorldGen;
 import net.acomputerdog.core.identity.Identifiable;
 
 public abstract class Structure implements Identifiable {
     protected static final int CHUNK_SIZE = Chunk.CHUNK_SIZE;
 
-    public abstract void placeIntoWorld(WorldGen gen, Chunk chunk, int x, int y, int z);
+    /**
+     * Places this structure.  Coordinates are local to the center chunk of the view.
+     */
+    public abstract void placeIntoWorld(WorldGen gen, WorldView view, int x, int y, int z);
 
-    public abstract boolean canPlaceAt(WorldGen gen, Chunk chunk, int x, int y, int z);
+    public abstract boolean canPlaceAt(WorldGen gen, WorldView view, int x, int y, int z);
 
-    public void placeIfPossible(WorldGen gen, Chunk chunk, int x, int y, int z) {
-        if (canPlaceAt(gen, chunk, x, y, z)) {
-            placeIntoWorld(gen, chunk, x, y, z);
+    public void placeIfPossible(WorldGen gen, WorldView view, int x, int y, int z) {
+        if (canPlaceAt(gen, view, x, y, z)) {
+            placeIntoWorld(gen, view, x, y, z);
         }
     }
 
@@ -2,10 +2,98 @@ package net.acomputerdog.boxle.world.structure;
 
 import net.acomputerdog.boxle.block.block.Block;
 
+/**
+ * Holds the blocks of a chunk.
+ * <p>
+ * Bulk methods that transfer a whole chunk use arrays of Chunk.CHUNK_VOLUME runtime IDs, ordered as given by
+ * Chunk.getBlockIndex() (columns are contiguous).
+ * <p>
+ * Setting a single block does not flag the chunk for rebuilding, as the chunk does that once its own write is done (or
+ * not at all, for writes that are batched by WorldView).  The bulk methods flag it themselves.
+ */
 public interface BlockStorage {
     public void setBlock(int x, int y, int z, Block block);
 
     public Block getBlock(int x, int y, int z);
 
+    /**
+     * Sets a block by its runtime ID.
+     *
+     * @param x  X-location
+     * @param y  Y-location
+     * @param z  Z-location
+     * @param id The runtime ID of the block, as assigned by Blocks.register()
+     */
+    public void setBlockId(int x, int y, int z, int id);
+
+    /**
+     * Gets the runtime ID of the block at a location.
+     *
+     * @param x X-location
+     * @param y Y-location
+     * @param z Z-location
+     * @return Return the runtime ID of the block
+     */
+    public int getBlockId(int x, int y, int z);
+
     public void clear(Block block);
+
+    /**
+     * Fills a box with a block.  Min coordinates are inclusive, max coordinates are exclusive.
+     *
+     * @param minX Lowest X-location
+     * @param minY Lowest Y-location
+     * @param minZ Lowest Z-location
+     * @param maxX Highest X-location, exclusive
+     * @param maxY Highest Y-location, exclusive
+     * @param maxZ Highest Z-location, exclusive
+     * @param id   The runtime ID of the block to fill with
+     */
+    public void fill(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int id);
+
+    /**
+     * Writes a full vertical column of blocks.
+     *
+     * @param x   X-location of the column
+     * @param z   Z-location of the column
+     * @param ids Chunk.CHUNK_SIZE runtime IDs, from y = 0 upwards
+     */
+    public void setColumn(int x, int z, int[] ids);
+
+    /**
+     * Replaces every block in this storage.
+     *
+     * @param ids Chunk.CHUNK_VOLUME runtime IDs, indexed by Chunk.getBlockIndex()
+     */
+    public void importIds(int[] ids);
+
+    /**
+     * Copies every block in this storage into an array.
+     *
+     * @param ids Array of at least Chunk.CHUNK_VOLUME ints to fill, indexed by Chunk.getBlockIndex()
+     * @return Return ids
+     */
+    public int[] exportIds(int[] ids);
+
+    /**
+     * Checks if every block in this storage is the same.
+     *
+     * @return Return true if this storage holds a single block type.
+     */
+    public boolean isUniform();
+
+    /**
+     * Gets the block filling this storage.
+     *
+     * @return Return the only block in this storage, or null if it is not uniform.
+     */
+    public Block getUniformBlock();
+
+    /**
+     * Creates a read-only copy of this storage.  The copy never changes, even if this storage does, and can be read
+     * from any thread.  Methods that change the copy throw an UnsupportedOperationException.
+     *
+     * @return Return the copy
+     */
+    public BlockStorage snapshot();
 }
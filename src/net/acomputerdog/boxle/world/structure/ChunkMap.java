@@ -0,0 +1,218 @@
+package net.acomputerdog.boxle.world.structure;
+
+import net.acomputerdog.boxle.world.Chunk;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Concurrent map of chunk locations to chunks.  Locations are packed into a long (see pack()), and each chunk carries its
+ * own packed key, so lookups do not box keys or allocate vectors.
+ * <p>
+ * The map is split into stripes that each hold an open-addressed (linear probing) table.  Readers never lock; writers
+ * lock only the stripe they change.  Removed entries are left as tombstones until the stripe is next rehashed, so a
+ * reader probing past a removal never misses an entry further along.
+ */
+public class ChunkMap {
+    /**
+     * Bits used for each axis of a packed location.  Chunk coordinates must fit in a signed 21-bit int (about one
+     * million chunks in each direction).
+     */
+    private static final int AXIS_BITS = 21;
+    private static final long AXIS_MASK = (1L << AXIS_BITS) - 1L;
+
+    private static final int NUM_STRIPES = 16;
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Marks a removed entry.
+     */
+    private static final Object TOMBSTONE = new Object();
+
+    private final Stripe[] stripes = new Stripe[NUM_STRIPES];
+
+    public ChunkMap() {
+        for (int index = 0; index < NUM_STRIPES; index++) {
+            stripes[index] = new Stripe();
+        }
+    }
+
+    /**
+     * Packs a chunk location into a long.
+     *
+     * @param x x-loc of the chunk
+     * @param y y-loc of the chunk
+     * @param z z-loc of the chunk
+     * @return Return the packed location
+     */
+    public static long pack(int x, int y, int z) {
+        return ((x & AXIS_MASK) << (AXIS_BITS * 2)) | ((y & AXIS_MASK) << AXIS_BITS) | (z & AXIS_MASK);
+    }
+
+    /**
+     * Gets a chunk.  Never blocks.
+     *
+     * @param key The packed location of the chunk
+     * @return Return the chunk, or null if there is no chunk at the location
+     */
+    public Chunk get(long key) {
+        long hash = hash(key);
+        return stripes[(int) (hash >>> 60)].get(key, (int) hash);
+    }
+
+    /**
+     * Adds a chunk, replacing any chunk at the same location.
+     *
+     * @param chunk The chunk to add
+     * @return Return the chunk that was replaced, or null
+     */
+    public Chunk put(Chunk chunk) {
+        long hash = hash(chunk.getKey());
+        return stripes[(int) (hash >>> 60)].put(chunk, (int) hash);
+    }
+
+    /**
+     * Removes the chunk at a location.
+     *
+     * @param key The packed location of the chunk
+     * @return Return the chunk that was removed, or null
+     */
+    public Chunk remove(long key) {
+        long hash = hash(key);
+        return stripes[(int) (hash >>> 60)].remove(key, (int) hash);
+    }
+
+    /**
+     * Gets the number of chunks in this map.
+     *
+     * @return Return the number of chunks
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size;
+        }
+        return size;
+    }
+
+    /**
+     * Mixes the bits of a key (MurmurHash3 finalizer), so that neighboring chunks are spread over the table.
+     */
+    private static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * One open-addressed table.  Writes are synchronized on the stripe.
+     */
+    private static class Stripe {
+        /**
+         * Slots hold null (never used), TOMBSTONE, or a Chunk.  Replaced as a whole when rehashing.
+         */
+        private volatile AtomicReferenceArray<Object> table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+
+        private volatile int size = 0;
+
+        /**
+         * Number of tombstones in the table.
+         */
+        private int removed = 0;
+
+        private Chunk get(long key, int hash) {
+            AtomicReferenceArray<Object> table = this.table;
+            int mask = table.length() - 1;
+            for (int index = hash & mask; ; index = (index + 1) & mask) {
+                Object entry = table.get(index);
+                if (entry == null) {
+                    return null;
+                }
+                if (entry != TOMBSTONE && ((Chunk) entry).getKey() == key) {
+                    return (Chunk) entry;
+                }
+            }
+        }
+
+        private synchronized Chunk put(Chunk chunk, int hash) {
+            long key = chunk.getKey();
+            AtomicReferenceArray<Object> table = this.table;
+            int mask = table.length() - 1;
+            int free = -1;
+            for (int index = hash & mask; ; index = (index + 1) & mask) {
+                Object entry = table.get(index);
+                if (entry == null) {
+                    break;
+                }
+                if (entry == TOMBSTONE) {
+                    if (free < 0) {
+                        free = index;
+                    }
+                } else if (((Chunk) entry).getKey() == key) {
+                    table.set(index, chunk);
+                    return (Chunk) entry;
+                }
+            }
+            if (free >= 0) {
+                table.set(free, chunk); //reuse the first tombstone on the probe path
+                removed--;
+            } else {
+                if ((size + removed + 1) * 2 > table.length()) { //keep the table at most half full
+                    rehash();
+                }
+                insert(this.table, chunk, hash);
+            }
+            size++;
+            return null;
+        }
+
+        private synchronized Chunk remove(long key, int hash) {
+            AtomicReferenceArray<Object> table = this.table;
+            int mask = table.length() - 1;
+            for (int index = hash & mask; ; index = (index + 1) & mask) {
+                Object entry = table.get(index);
+                if (entry == null) {
+                    return null;
+                }
+                if (entry != TOMBSTONE && ((Chunk) entry).getKey() == key) {
+                    table.set(index, TOMBSTONE);
+                    size--;
+                    removed++;
+                    return (Chunk) entry;
+                }
+            }
+        }
+
+        /**
+         * Copies every chunk into a new table, dropping tombstones.  Readers keep using the old table until the new one
+         * is published.
+         */
+        private void rehash() {
+            int capacity = INITIAL_CAPACITY;
+            while (capacity < (size + 1) * 4) {
+                capacity <<= 1;
+            }
+            AtomicReferenceArray<Object> oldTable = table;
+            AtomicReferenceArray<Object> newTable = new AtomicReferenceArray<>(capacity);
+            for (int index = 0; index < oldTable.length(); index++) {
+                Object entry = oldTable.get(index);
+                if (entry != null && entry != TOMBSTONE) {
+                    insert(newTable, (Chunk) entry, (int) hash(((Chunk) entry).getKey()));
+                }
+            }
+            removed = 0;
+            table = newTable;
+        }
+
+        private static void insert(AtomicReferenceArray<Object> table, Chunk chunk, int hash) {
+            int mask = table.length() - 1;
+            int index = hash & mask;
+            while (table.get(index) != null) {
+                index = (index + 1) & mask;
+            }
+            table.set(index, chunk);
+        }
+    }
+}
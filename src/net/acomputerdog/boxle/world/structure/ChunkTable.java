@@ -1,14 +1,11 @@
 package net.acomputerdog.boxle.world.structure;
 
 import net.acomputerdog.boxle.math.vec.Vec3i;
-import net.acomputerdog.boxle.math.vec.VecPool;
 import net.acomputerdog.boxle.world.Chunk;
 import net.acomputerdog.boxle.world.World;
 
 import java.util.Collections;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 
 /**
@@ -18,7 +15,7 @@ public class ChunkTable {
     /**
      * Map of chunk locations to chunks
      */
-    private final Map<Vec3i, Chunk> chunkLocMap;
+    private final ChunkMap chunkLocMap;
     /**
      * List of all loaded chunks
      */
@@ -29,6 +26,11 @@ public class ChunkTable {
      */
     private final World world;
 
+    /**
+     * Held while adding or removing chunks, so neighbor links are always updated together.  Lookups do not take it.
+     */
+    private final Object linkLock = new Object();
+
     /**
      * Creates a new ChunkTable
      *
@@ -37,7 +39,7 @@ public class ChunkTable {
     public ChunkTable(World world) {
         if (world == null) throw new IllegalArgumentException("World cannot be null!");
         this.world = world;
-        chunkLocMap = new ConcurrentHashMap<>(); //concurrent HashMap for thread safety
+        chunkLocMap = new ChunkMap(); //lock-free reads, keyed by packed location
         allChunks = new ConcurrentSkipListSet<>(); //thread-safe list implementation
     }
 
@@ -49,11 +51,22 @@ public class ChunkTable {
      */
     public Chunk addChunk(Chunk chunk) {
         if (chunk == null) throw new IllegalArgumentException("Chunk cannot be null!");
-        allChunks.add(chunk); //add chunk to list of all chunks
-        Chunk oldChunk = chunkLocMap.put(chunk.getLocation(), chunk); //get existing chunk, or null
+        Chunk oldChunk;
+        synchronized (linkLock) {
+            oldChunk = chunkLocMap.put(chunk); //get existing chunk, or null
+            if (oldChunk != null) {
+                unlinkNeighbors(oldChunk);
+                oldChunk.setLoaded(false);
+            }
+            linkNeighbors(chunk);
+            chunk.setLoaded(true);
+        }
         if (oldChunk != null) {
             allChunks.remove(oldChunk); //if chunk exists, remove from allChunks
+            world.getColumnHeights().removeChunk(oldChunk);
         }
+        allChunks.add(chunk); //add chunk to list of all chunks, after the old one is gone because they compare equal
+        world.getColumnHeights().addChunk(chunk);
         return oldChunk;
     }
 
@@ -64,11 +77,7 @@ public class ChunkTable {
      * @return Return the chunk that was removed.
      */
     public Chunk removeChunkAt(Vec3i loc) {
-        Chunk chunk = chunkLocMap.remove(loc); //get existing chunk, or null
-        if (chunk != null) {
-            allChunks.remove(chunk); //if chunk exists, remove from allChunks
-        }
-        return chunk;
+        return removeChunkAt(loc.x, loc.y, loc.z);
     }
 
     /**
@@ -80,14 +89,23 @@ public class ChunkTable {
      * @return Return the chunk that was removed.
      */
     public Chunk removeChunkAt(int x, int y, int z) {
-        Vec3i vec = VecPool.getVec3i(x, y, z);
-        Chunk chunk = removeChunkAt(vec);
-        VecPool.free(vec); //don't forget to free the vec!
+        Chunk chunk;
+        synchronized (linkLock) {
+            chunk = chunkLocMap.remove(ChunkMap.pack(x, y, z)); //get existing chunk, or null
+            if (chunk != null) {
+                unlinkNeighbors(chunk);
+                chunk.setLoaded(false);
+            }
+        }
+        if (chunk != null) {
+            allChunks.remove(chunk); //if chunk exists, remove from allChunks
+            world.getColumnHeights().removeChunk(chunk);
+        }
         return chunk;
     }
 
     public void removeChunk(Chunk chunk) {
-        removeChunkAt(chunk.getLocation());
+        removeChunkAt(chunk.getXLoc(), chunk.getYLoc(), chunk.getZLoc());
     }
 
     /**
@@ -97,7 +115,7 @@ public class ChunkTable {
      * @return Return the chunk, or null if none exists
      */
     public Chunk getChunk(Vec3i loc) {
-        return chunkLocMap.get(loc);
+        return chunkLocMap.get(ChunkMap.pack(loc.x, loc.y, loc.z));
     }
 
     /**
@@ -109,10 +127,41 @@ public class ChunkTable {
      * @return return the chunk
      */
     public Chunk getChunk(int x, int y, int z) {
-        Vec3i vec = VecPool.getVec3i(x, y, z);
-        Chunk chunk = getChunk(vec);
-        VecPool.free(vec); //don't forget to free the vec!
-        return chunk;
+        return chunkLocMap.get(ChunkMap.pack(x, y, z));
+    }
+
+    private void linkNeighbors(Chunk chunk) {
+        for (int x = -1; x <= 1; x++) {
+            for (int y = -1; y <= 1; y++) {
+                for (int z = -1; z <= 1; z++) {
+                    if (x != 0 || y != 0 || z != 0) {
+                        Chunk neighbor = getChunk(chunk.getXLoc() + x, chunk.getYLoc() + y, chunk.getZLoc() + z);
+                        chunk.setNeighbor(x, y, z, neighbor);
+                        if (neighbor != null) {
+                            neighbor.setNeighbor(-x, -y, -z, chunk);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void unlinkNeighbors(Chunk chunk) {
+        for (int x = -1; x <= 1; x++) {
+            for (int y = -1; y <= 1; y++) {
+                for (int z = -1; z <= 1; z++) {
+                    if (x != 0 || y != 0 || z != 0) {
+                        Chunk neighbor = chunk.getNeighbor(x, y, z);
+                        if (neighbor != null) {
+                            if (neighbor.getNeighbor(-x, -y, -z) == chunk) {
+                                neighbor.setNeighbor(-x, -y, -z, null);
+                            }
+                            chunk.setNeighbor(x, y, z, null);
+                        }
+                    }
+                }
+            }
+        }
     }
 
     /**
@@ -0,0 +1,163 @@
+package net.acomputerdog.boxle.world.structure;
+
+import net.acomputerdog.boxle.math.loc.CoordConverter;
+import net.acomputerdog.boxle.world.Chunk;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tracks the highest non-transparent block of every x,z column across all loaded chunks stacked in that column.
+ * Built from the per-chunk heightmaps, and kept current as chunks are loaded, unloaded, or changed.  Thread-safe.
+ */
+public class ColumnHeightMap {
+    /**
+     * Returned for columns with no loaded ground.
+     */
+    public static final int NO_HEIGHT = Integer.MIN_VALUE;
+
+    private static final int chunkSize = Chunk.CHUNK_SIZE;
+
+    /**
+     * Map of packed chunk x,z locations to columns.
+     */
+    private final Map<Long, Column> columns = new HashMap<>();
+
+    /**
+     * Adds the heights of a newly loaded chunk.
+     *
+     * @param chunk The chunk that was loaded
+     */
+    public synchronized void addChunk(Chunk chunk) {
+        Long key = getKey(chunk.getXLoc(), chunk.getZLoc());
+        Column column = columns.get(key);
+        if (column == null) {
+            columns.put(key, column = new Column());
+        }
+        column.chunks.put(chunk.getYLoc(), chunk);
+        for (int x = 0; x < chunkSize; x++) {
+            for (int z = 0; z < chunkSize; z++) {
+                int height = toGlobal(chunk, chunk.getGroundHeight(x, z));
+                int index = (x * chunkSize) + z;
+                if (height > column.heights[index]) {
+                    column.heights[index] = height;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the heights of an unloaded chunk.
+     *
+     * @param chunk The chunk that was unloaded
+     */
+    public synchronized void removeChunk(Chunk chunk) {
+        Long key = getKey(chunk.getXLoc(), chunk.getZLoc());
+        Column column = columns.get(key);
+        if (column != null && column.chunks.get(chunk.getYLoc()) == chunk) {
+            column.chunks.remove(chunk.getYLoc());
+            if (column.chunks.isEmpty()) {
+                columns.remove(key);
+            } else {
+                for (int x = 0; x < chunkSize; x++) {
+                    for (int z = 0; z < chunkSize; z++) {
+                        if (isInChunk(chunk, column.heights[(x * chunkSize) + z])) {
+                            column.recalculate(x, z);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Called by a chunk when the height of one of its columns changes.
+     *
+     * @param chunk  The chunk that changed
+     * @param x      X-location of the column in the chunk
+     * @param z      Z-location of the column in the chunk
+     * @param height The new local height, or -1 if the column is empty
+     */
+    public synchronized void updateColumn(Chunk chunk, int x, int z, int height) {
+        Column column = columns.get(getKey(chunk.getXLoc(), chunk.getZLoc()));
+        if (column != null && column.chunks.get(chunk.getYLoc()) == chunk) { //ignore chunks that are not loaded yet
+            int index = (x * chunkSize) + z;
+            int global = toGlobal(chunk, height);
+            if (global >= column.heights[index]) {
+                column.heights[index] = global;
+            } else if (isInChunk(chunk, column.heights[index])) {
+                column.recalculate(x, z);
+            }
+        }
+    }
+
+    /**
+     * Called by a chunk when many of its columns changed at once.
+     *
+     * @param chunk The chunk that changed
+     */
+    public synchronized void updateChunk(Chunk chunk) {
+        for (int x = 0; x < chunkSize; x++) {
+            for (int z = 0; z < chunkSize; z++) {
+                updateColumn(chunk, x, z, chunk.getGroundHeight(x, z));
+            }
+        }
+    }
+
+    /**
+     * Gets the highest non-transparent block in a column of the world.
+     *
+     * @param x Global x-location
+     * @param z Global z-location
+     * @return Return the global y-location of the block, or NO_HEIGHT if there is no loaded ground in the column
+     */
+    public synchronized int getHeight(int x, int z) {
+        Column column = columns.get(getKey(CoordConverter.globalToChunk(x), CoordConverter.globalToChunk(z)));
+        if (column == null) {
+            return NO_HEIGHT;
+        }
+        return column.heights[(CoordConverter.globalToBlock(x) * chunkSize) + CoordConverter.globalToBlock(z)];
+    }
+
+    private static boolean isInChunk(Chunk chunk, int globalHeight) {
+        int bottom = chunk.getYLoc() * chunkSize;
+        return globalHeight >= bottom && globalHeight < bottom + chunkSize;
+    }
+
+    private static int toGlobal(Chunk chunk, int height) {
+        return height < 0 ? NO_HEIGHT : (chunk.getYLoc() * chunkSize) + height;
+    }
+
+    private static Long getKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    /**
+     * A vertical stack of loaded chunks.
+     */
+    private static class Column {
+        private final int[] heights = new int[chunkSize * chunkSize];
+        private final TreeMap<Integer, Chunk> chunks = new TreeMap<>();
+
+        private Column() {
+            Arrays.fill(heights, NO_HEIGHT);
+        }
+
+        /**
+         * Finds the height of a column from the highest chunk that has ground in it.
+         */
+        private void recalculate(int x, int z) {
+            int height = NO_HEIGHT;
+            for (Chunk chunk : chunks.descendingMap().values()) {
+                int local = chunk.getGroundHeight(x, z);
+                if (local >= 0) {
+                    height = toGlobal(chunk, local);
+                    break;
+                }
+            }
+            heights[(x * chunkSize) + z] = height;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package net.acomputerdog.boxle.world.structure;
+
+import net.acomputerdog.boxle.math.vec.Vec3i;
+import net.acomputerdog.boxle.math.vec.VecPool;
+import net.acomputerdog.boxle.save.world.files.Region;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Holds the open regions of a world, in order of last use.  Regions are kept open after the player leaves them, and are
+ * only closed by evict() once the regions together use more than the maximum size, or more than the maximum number of
+ * regions are open, least recently used first.  The size only counts memory; the count bounds the file handles and
+ * native codec state that every open region holds.  Regions within the given range, plus HYSTERESIS, are never
+ * evicted, even if that leaves the cache over either limit.
+ * <p>
+ * Thread-safe.
+ */
+public class RegionCache {
+    /**
+     * Distance in regions beyond the range passed to evict() within which regions are still kept, so that walking back
+     * and forth over a region border does not close and reopen the region.
+     */
+    public static final int HYSTERESIS = 1;
+
+    /**
+     * Regions by packed location, least recently used first.
+     */
+    private final LinkedHashMap<Long, Region> regions = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Regions returned by evict() that have not been removed yet.
+     */
+    private final Set<Region> evicting = new HashSet<>();
+
+    private final long maxSize;
+    private final int maxOpen;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Creates a new RegionCache
+     *
+     * @param maxSize The memory that regions may use before they are evicted, in bytes
+     * @param maxOpen The number of regions that may be open before they are evicted
+     */
+    public RegionCache(long maxSize, int maxOpen) {
+        this.maxSize = maxSize;
+        this.maxOpen = maxOpen;
+    }
+
+    /**
+     * Gets an open region without counting a hit or miss.
+     *
+     * @param x x-loc of the region
+     * @param y y-loc of the region
+     * @param z z-loc of the region
+     * @return Return the region, or null if it is not open
+     */
+    public synchronized Region get(int x, int y, int z) {
+        return regions.get(ChunkMap.pack(x, y, z));
+    }
+
+    /**
+     * Gets an open region that is about to be read or written, counting a hit or a miss.  On a miss, the caller opens the
+     * region and passes it to add().
+     *
+     * @param x x-loc of the region
+     * @param y y-loc of the region
+     * @param z z-loc of the region
+     * @return Return the region, or null if it is not open
+     */
+    public synchronized Region use(int x, int y, int z) {
+        Region region = regions.get(ChunkMap.pack(x, y, z));
+        if (region != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return region;
+    }
+
+    /**
+     * Adds a newly opened region.
+     *
+     * @param region The region to add
+     * @return Return the region that is now in the cache.  If another thread added the same region first, its region is
+     * returned and the caller should close the one it opened.
+     */
+    public synchronized Region add(Region region) {
+        Vec3i loc = region.getLoc();
+        Long key = ChunkMap.pack(loc.x, loc.y, loc.z);
+        VecPool.free(loc);
+        Region existing = regions.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        regions.put(key, region);
+        return region;
+    }
+
+    /**
+     * Removes a region, if it is the one in the cache at its location.
+     *
+     * @param region The region to remove
+     * @return Return true if the region was removed
+     */
+    public synchronized boolean remove(Region region) {
+        evicting.remove(region);
+        Vec3i loc = region.getLoc();
+        Long key = ChunkMap.pack(loc.x, loc.y, loc.z);
+        VecPool.free(loc);
+        if (regions.get(key) == region) {
+            regions.remove(key);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Picks regions to close until the cache fits within its maximum size and number of regions, least recently used
+     * first.  The regions stay in the cache until they are removed, so that they are not opened twice while they are
+     * being closed, but are not returned again.
+     *
+     * @param x      x-loc of the region at the center of the range, usually the one containing the player
+     * @param y      y-loc of the center region
+     * @param z      z-loc of the center region
+     * @param rangeH Horizontal distance in regions within which regions are kept
+     * @param rangeV Vertical distance in regions within which regions are kept
+     * @return Return the regions to close, or an empty list if none
+     */
+    public synchronized List<Region> evict(int x, int y, int z, int rangeH, int rangeV) {
+        List<Region> evicted = new ArrayList<>();
+        long size = getMemorySize();
+        int open = regions.size() - evicting.size();
+        for (Region region : regions.values()) {
+            if (size <= maxSize && open <= maxOpen) {
+                break;
+            }
+            if (evicting.contains(region)) {
+                continue;
+            }
+            Vec3i loc = region.getLoc();
+            boolean inRange = Math.abs(loc.x - x) <= rangeH + HYSTERESIS && Math.abs(loc.y - y) <= rangeV + HYSTERESIS && Math.abs(loc.z - z) <= rangeH + HYSTERESIS;
+            VecPool.free(loc);
+            if (!inRange) {
+                size -= region.getMemorySize();
+                open--;
+                evicting.add(region);
+                evicted.add(region);
+                evictions++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Gets the memory used by the regions that are not being evicted.
+     *
+     * @return Return the estimated size in bytes
+     */
+    public synchronized long getMemorySize() {
+        long size = 0;
+        for (Region region : regions.values()) {
+            if (!evicting.contains(region)) {
+                size += region.getMemorySize();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Gets every region in the cache, including ones being evicted.
+     *
+     * @return Return a copy of the regions, least recently used first
+     */
+    public synchronized List<Region> getRegions() {
+        return new ArrayList<>(regions.values());
+    }
+
+    public synchronized int size() {
+        return regions.size();
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public int getMaxOpen() {
+        return maxOpen;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
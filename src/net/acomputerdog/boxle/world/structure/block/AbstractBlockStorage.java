@@ -0,0 +1,120 @@
+package net.acomputerdog.boxle.world.structure.block;
+
+import net.acomputerdog.boxle.block.block.Block;
+import net.acomputerdog.boxle.block.block.Blocks;
+import net.acomputerdog.boxle.world.Chunk;
+import net.acomputerdog.boxle.world.structure.BlockStorage;
+
+/**
+ * Implements the bulk methods of BlockStorage one block at a time.  Storages that can do better should override them.
+ */
+public abstract class AbstractBlockStorage implements BlockStorage {
+    private static final int chunkSize = Chunk.CHUNK_SIZE;
+
+    @Override
+    public void fill(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int id) {
+        for (int x = minX; x < maxX; x++) {
+            for (int z = minZ; z < maxZ; z++) {
+                for (int y = minY; y < maxY; y++) {
+                    setBlockId(x, y, z, id);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void setColumn(int x, int z, int[] ids) {
+        for (int y = 0; y < chunkSize; y++) {
+            setBlockId(x, y, z, ids[y]);
+        }
+    }
+
+    @Override
+    public void importIds(int[] ids) {
+        int index = 0;
+        for (int x = 0; x < chunkSize; x++) {
+            for (int z = 0; z < chunkSize; z++) {
+                for (int y = 0; y < chunkSize; y++) {
+                    setBlockId(x, y, z, ids[index]);
+                    index++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public int[] exportIds(int[] ids) {
+        int index = 0;
+        for (int x = 0; x < chunkSize; x++) {
+            for (int z = 0; z < chunkSize; z++) {
+                for (int y = 0; y < chunkSize; y++) {
+                    ids[index] = getBlockId(x, y, z);
+                    index++;
+                }
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public BlockStorage snapshot() {
+        return new Snapshot(exportIds(new int[Chunk.CHUNK_VOLUME]));
+    }
+
+    /**
+     * Read-only storage backed by a copy of every block ID.
+     */
+    private static class Snapshot extends AbstractBlockStorage {
+        private final int[] ids;
+
+        private Snapshot(int[] ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public Block getBlock(int x, int y, int z) {
+            return Blocks.getBlock(getBlockId(x, y, z));
+        }
+
+        @Override
+        public int getBlockId(int x, int y, int z) {
+            return ids[Chunk.getBlockIndex(x, y, z)];
+        }
+
+        @Override
+        public int[] exportIds(int[] ids) {
+            System.arraycopy(this.ids, 0, ids, 0, Chunk.CHUNK_VOLUME);
+            return ids;
+        }
+
+        @Override
+        public void setBlock(int x, int y, int z, Block block) {
+            throw new UnsupportedOperationException("Snapshots cannot be changed!");
+        }
+
+        @Override
+        public void setBlockId(int x, int y, int z, int id) {
+            throw new UnsupportedOperationException("Snapshots cannot be changed!");
+        }
+
+        @Override
+        public void clear(Block block) {
+            throw new UnsupportedOperationException("Snapshots cannot be changed!");
+        }
+
+        @Override
+        public boolean isUniform() {
+            return false;
+        }
+
+        @Override
+        public Block getUniformBlock() {
+            return null;
+        }
+
+        @Override
+        public BlockStorage snapshot() {
+            return this;
+        }
+    }
+}
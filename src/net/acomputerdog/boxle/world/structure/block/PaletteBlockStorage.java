@@ -0,0 +1,359 @@
+package net.acomputerdog.boxle.world.structure.block;
+
+import net.acomputerdog.boxle.block.block.Block;
+import net.acomputerdog.boxle.block.block.Blocks;
+import net.acomputerdog.boxle.world.Chunk;
+import net.acomputerdog.boxle.world.structure.BlockStorage;
+
+import java.util.Arrays;
+
+/**
+ * BlockStorage that keeps a small palette of the block IDs used in a chunk, and a bit-packed array of palette indexes.
+ * The width of each index grows (1, 2, 4, 8, then 16 bits) as more block types are added to the palette.
+ * Widths are always powers of two so that an index never straddles two longs.
+ * <p>
+ * A storage holding only one block type is "uniform" and has no index array at all.  The array is created on the first
+ * setBlock() with a different block.
+ * <p>
+ * Snapshots share the palette and index array with the storage they were taken from.  The storage copies them before
+ * its next change, so taking a snapshot costs nothing until then.
+ */
+public class PaletteBlockStorage implements BlockStorage {
+    private static final int chunkSize = Chunk.CHUNK_SIZE;
+
+    /**
+     * Largest supported index width.  65536 block types is far more than can be registered.
+     */
+    private static final int MAX_BITS = 16;
+
+    private final Chunk chunk;
+
+    /**
+     * Runtime IDs of the blocks referenced by this storage.  Only the first paletteSize entries are valid.
+     */
+    private int[] palette;
+    private int paletteSize;
+
+    /**
+     * Width in bits of each index in data.
+     */
+    private int bitsPerEntry;
+
+    /**
+     * log2(bitsPerEntry), used to find the long containing an index.
+     */
+    private int bitsShift;
+
+    /**
+     * Mask of the lowest bitsPerEntry bits.
+     */
+    private long entryMask;
+
+    /**
+     * Bit-packed palette indexes, (64 / bitsPerEntry) per long.  Null while this storage is uniform.
+     */
+    private long[] data;
+
+    /**
+     * If true, this storage is a snapshot and cannot be changed.
+     */
+    private final boolean readOnly;
+
+    /**
+     * If true, palette and data are shared with a snapshot and must be copied before they are changed.
+     */
+    private boolean shared = false;
+
+    public PaletteBlockStorage(Chunk chunk) {
+        this.chunk = chunk;
+        this.readOnly = false;
+        reset(Blocks.air.getRuntimeId());
+    }
+
+    /**
+     * Creates a read-only snapshot sharing the arrays of another storage.
+     */
+    private PaletteBlockStorage(PaletteBlockStorage source) {
+        this.chunk = source.chunk;
+        this.readOnly = true;
+        this.palette = source.palette;
+        this.paletteSize = source.paletteSize;
+        this.data = source.data;
+        setBitsPerEntry(source.bitsPerEntry);
+    }
+
+    @Override
+    public Block getBlock(int x, int y, int z) {
+        return Blocks.getBlock(getBlockId(x, y, z));
+    }
+
+    @Override
+    public int getBlockId(int x, int y, int z) {
+        if (data == null) {
+            return palette[0];
+        }
+        return palette[readIndex(calcIndex(x, y, z))];
+    }
+
+    @Override
+    public void setBlock(int x, int y, int z, Block block) {
+        if (block == null || block.getRuntimeId() < 0) {
+            chunk.getWorld().getLogger().logWarning("Attempted to set a null or unregistered block, storing air instead!");
+            block = Blocks.air;
+        }
+        setBlockId(x, y, z, block.getRuntimeId());
+    }
+
+    @Override
+    public void setBlockId(int x, int y, int z, int id) {
+        prepareWrite();
+        if (data == null) {
+            if (palette[0] == id) {
+                return; //already uniform with this block
+            }
+            expand();
+        }
+        writeIndex(calcIndex(x, y, z), findOrAddPaletteEntry(id));
+    }
+
+    @Override
+    public void clear(Block block) {
+        checkWritable();
+        reset(((block == null) ? Blocks.air : block).getRuntimeId());
+        chunk.setNeedsRebuild(true);
+    }
+
+    @Override
+    public void fill(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, int id) {
+        checkWritable();
+        if (minX <= 0 && minY <= 0 && minZ <= 0 && maxX >= chunkSize && maxY >= chunkSize && maxZ >= chunkSize) {
+            reset(id);
+        } else {
+            prepareWrite();
+            if (data == null) {
+                if (palette[0] == id) {
+                    return;
+                }
+                expand();
+            }
+            int paletteIndex = findOrAddPaletteEntry(id);
+            for (int x = minX; x < maxX; x++) {
+                for (int z = minZ; z < maxZ; z++) {
+                    int base = calcIndex(x, 0, z);
+                    for (int y = minY; y < maxY; y++) {
+                        writeIndex(base + y, paletteIndex);
+                    }
+                }
+            }
+        }
+        chunk.setNeedsRebuild(true);
+    }
+
+    @Override
+    public void setColumn(int x, int z, int[] ids) {
+        prepareWrite();
+        int base = calcIndex(x, 0, z);
+        int lastId = -1;
+        int lastIndex = 0;
+        for (int y = 0; y < chunkSize; y++) {
+            int id = ids[y];
+            if (data == null) {
+                if (palette[0] == id) {
+                    continue;
+                }
+                expand();
+            }
+            if (id != lastId) { //columns are mostly runs of the same block
+                lastIndex = findOrAddPaletteEntry(id);
+                lastId = id;
+            }
+            writeIndex(base + y, lastIndex);
+        }
+        chunk.setNeedsRebuild(true);
+    }
+
+    @Override
+    public void importIds(int[] ids) {
+        checkWritable();
+        int first = ids[0];
+        boolean uniform = true;
+        for (int index = 1; index < Chunk.CHUNK_VOLUME; index++) {
+            if (ids[index] != first) {
+                uniform = false;
+                break;
+            }
+        }
+        if (uniform) {
+            reset(first);
+        } else {
+            int[] lookup = new int[Blocks.getNumBlocks()];
+            Arrays.fill(lookup, -1);
+            int[] newPalette = new int[4];
+            int newSize = 0;
+            for (int index = 0; index < Chunk.CHUNK_VOLUME; index++) {
+                int id = ids[index];
+                if (lookup[id] < 0) {
+                    if (newSize == newPalette.length) {
+                        newPalette = Arrays.copyOf(newPalette, newSize * 2);
+                    }
+                    newPalette[newSize] = id;
+                    lookup[id] = newSize;
+                    newSize++;
+                }
+            }
+            int bits = 1;
+            while ((1 << bits) < newSize) {
+                bits <<= 1;
+            }
+            if (bits > MAX_BITS) {
+                throw new IllegalStateException("Too many block types in chunk at " + chunk.asCoords() + "!");
+            }
+            palette = Arrays.copyOf(newPalette, 1 << bits);
+            paletteSize = newSize;
+            setBitsPerEntry(bits);
+            data = new long[Chunk.CHUNK_VOLUME >> (6 - bitsShift)];
+            shared = false;
+            for (int index = 0; index < Chunk.CHUNK_VOLUME; index++) {
+                writeIndex(index, lookup[ids[index]]);
+            }
+        }
+        chunk.setNeedsRebuild(true);
+    }
+
+    @Override
+    public int[] exportIds(int[] ids) {
+        if (data == null) {
+            Arrays.fill(ids, 0, Chunk.CHUNK_VOLUME, palette[0]);
+        } else {
+            for (int index = 0; index < Chunk.CHUNK_VOLUME; index++) {
+                ids[index] = palette[readIndex(index)];
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public boolean isUniform() {
+        return data == null;
+    }
+
+    @Override
+    public Block getUniformBlock() {
+        return data == null ? Blocks.getBlock(palette[0]) : null;
+    }
+
+    @Override
+    public BlockStorage snapshot() {
+        if (readOnly) {
+            return this;
+        }
+        shared = true;
+        return new PaletteBlockStorage(this);
+    }
+
+    public int getPaletteSize() {
+        return paletteSize;
+    }
+
+    public int getBitsPerEntry() {
+        return bitsPerEntry;
+    }
+
+    public Chunk getChunk() {
+        return chunk;
+    }
+
+    //---------------Internal Methods------------------------------
+
+    private void reset(int id) {
+        palette = new int[2];
+        palette[0] = id;
+        paletteSize = 1;
+        setBitsPerEntry(1);
+        data = null;
+        shared = false;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Snapshots cannot be changed!");
+        }
+    }
+
+    /**
+     * Copies the arrays if a snapshot is still using them, so the snapshot does not see the coming change.
+     */
+    private void prepareWrite() {
+        checkWritable();
+        if (shared) {
+            palette = palette.clone();
+            if (data != null) {
+                data = data.clone();
+            }
+            shared = false;
+        }
+    }
+
+    /**
+     * Leaves uniform mode.  Every index starts as 0, which is the uniform block.
+     */
+    private void expand() {
+        data = new long[Chunk.CHUNK_VOLUME >> (6 - bitsShift)];
+    }
+
+    private int findOrAddPaletteEntry(int id) {
+        for (int index = 0; index < paletteSize; index++) {
+            if (palette[index] == id) {
+                return index;
+            }
+        }
+        if (paletteSize == palette.length) {
+            grow();
+        }
+        palette[paletteSize] = id;
+        return paletteSize++;
+    }
+
+    /**
+     * Doubles the index width and repacks data.
+     */
+    private void grow() {
+        if (bitsPerEntry >= MAX_BITS) {
+            throw new IllegalStateException("Too many block types in chunk at " + chunk.asCoords() + "!");
+        }
+        long[] oldData = data;
+        int oldBits = bitsPerEntry;
+        int oldShift = bitsShift;
+        long oldMask = entryMask;
+
+        setBitsPerEntry(bitsPerEntry << 1);
+        data = new long[Chunk.CHUNK_VOLUME >> (6 - bitsShift)];
+        for (int index = 0; index < Chunk.CHUNK_VOLUME; index++) {
+            int oldOffset = (index & ((64 >> oldShift) - 1)) * oldBits;
+            writeIndex(index, (int) ((oldData[index >> (6 - oldShift)] >>> oldOffset) & oldMask));
+        }
+
+        palette = Arrays.copyOf(palette, 1 << bitsPerEntry);
+    }
+
+    private void setBitsPerEntry(int bits) {
+        bitsPerEntry = bits;
+        bitsShift = Integer.numberOfTrailingZeros(bits);
+        entryMask = (1L << bits) - 1L;
+    }
+
+    private int readIndex(int index) {
+        int offset = (index & ((64 >> bitsShift) - 1)) << bitsShift;
+        return (int) ((data[index >> (6 - bitsShift)] >>> offset) & entryMask);
+    }
+
+    private void writeIndex(int index, int value) {
+        int word = index >> (6 - bitsShift);
+        int offset = (index & ((64 >> bitsShift) - 1)) << bitsShift;
+        data[word] = (data[word] & ~(entryMask << offset)) | (((long) value & entryMask) << offset);
+    }
+
+    private static int calcIndex(int x, int y, int z) {
+        return Chunk.getBlockIndex(x, y, z);
+    }
+}
@@ -3,9 +3,8 @@ package net.acomputerdog.boxle.world.structure.block;
 import net.acomputerdog.boxle.block.block.Block;
 import net.acomputerdog.boxle.block.block.Blocks;
 import net.acomputerdog.boxle.world.Chunk;
-import net.acomputerdog.boxle.world.structure.BlockStorage;
 
-public class SimpleBlockStorage implements BlockStorage {
+public class SimpleBlockStorage extends AbstractBlockStorage {
     private static final int chunkSize = Chunk.CHUNK_SIZE;
 
     private final Chunk chunk;
@@ -41,10 +40,29 @@ public class SimpleBlockStorage implements BlockStorage {
             block = Blocks.air;
         }
         blocks[x][y][z] = block;
-        chunk.setNeedsRebuild(true);
     }
 
     public Chunk getChunk() {
         return chunk;
     }
+
+    @Override
+    public void setBlockId(int x, int y, int z, int id) {
+        setBlock(x, y, z, Blocks.getBlock(id));
+    }
+
+    @Override
+    public int getBlockId(int x, int y, int z) {
+        return getBlock(x, y, z).getRuntimeId();
+    }
+
+    @Override
+    public boolean isUniform() {
+        return false;
+    }
+
+    @Override
+    public Block getUniformBlock() {
+        return null;
+    }
 }
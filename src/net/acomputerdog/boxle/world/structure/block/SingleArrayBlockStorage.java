@@ -3,10 +3,9 @@ package net.acomputerdog.boxle.world.structure.block;
 import net.acomputerdog.boxle.block.block.Block;
 import net.acomputerdog.boxle.block.block.Blocks;
 import net.acomputerdog.boxle.world.Chunk;
-import net.acomputerdog.boxle.world.structure.BlockStorage;
 
 @Deprecated
-public class SingleArrayBlockStorage implements BlockStorage {
+public class SingleArrayBlockStorage extends AbstractBlockStorage {
     private static final int chunkSize = Chunk.CHUNK_SIZE;
     private static final int chunkSlice = chunkSize * chunkSize;
 
@@ -36,4 +35,24 @@ public class SingleArrayBlockStorage implements BlockStorage {
         int index = calcIndex(x, y, z);
         blocks[index] = block;
     }
+
+    @Override
+    public void setBlockId(int x, int y, int z, int id) {
+        setBlock(x, y, z, Blocks.getBlock(id));
+    }
+
+    @Override
+    public int getBlockId(int x, int y, int z) {
+        return getBlock(x, y, z).getRuntimeId();
+    }
+
+    @Override
+    public boolean isUniform() {
+        return false;
+    }
+
+    @Override
+    public Block getUniformBlock() {
+        return null;
+    }
 }
@@ -3,7 +3,6 @@ package net.acomputerdog.boxle.world.structure.block;
 import net.acomputerdog.boxle.block.block.Block;
 import net.acomputerdog.boxle.block.block.Blocks;
 import net.acomputerdog.boxle.world.Chunk;
-import net.acomputerdog.boxle.world.structure.BlockStorage;
 
 @Deprecated
 /**
@@ -11,7 +10,7 @@ import net.acomputerdog.boxle.world.structure.BlockStorage;
  * Not yet thread-safe!
  */
 //todo: make thread-safe
-public class SquaresBlockStorage implements BlockStorage {
+public class SquaresBlockStorage extends AbstractBlockStorage {
     /**
      * Array containing powers of two up to 2048
      */
@@ -177,4 +176,24 @@ public class SquaresBlockStorage implements BlockStorage {
         }
         return false;
     }
+
+    @Override
+    public void setBlockId(int x, int y, int z, int id) {
+        setBlock(x, y, z, Blocks.getBlock(id));
+    }
+
+    @Override
+    public int getBlockId(int x, int y, int z) {
+        return getBlock(x, y, z).getRuntimeId();
+    }
+
+    @Override
+    public boolean isUniform() {
+        return false;
+    }
+
+    @Override
+    public Block getUniformBlock() {
+        return null;
+    }
 }
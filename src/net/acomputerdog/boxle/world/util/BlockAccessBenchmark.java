@@ -0,0 +1,174 @@
+package net.acomputerdog.boxle.world.util;
+
+import net.acomputerdog.boxle.block.block.Blocks;
+import net.acomputerdog.boxle.main.Boxle;
+import net.acomputerdog.boxle.math.vec.Vec3i;
+import net.acomputerdog.boxle.math.vec.VecPool;
+import net.acomputerdog.boxle.world.BlockAccessor;
+import net.acomputerdog.boxle.world.Chunk;
+import net.acomputerdog.boxle.world.World;
+import net.acomputerdog.boxle.world.gen.CellsWorldGen;
+import net.acomputerdog.core.logger.CLogger;
+
+/**
+ * Microbenchmark of the ways to read blocks by global location.  Reads every block in a cube around a location, using:
+ * <ul>
+ * <li>the old World.getBlockAt(Vec3i) path: two duplicated vectors, float division and Math.floor(), and a lookup by Vec3i</li>
+ * <li>World.getBlockIdAt(), with shift/mask math and a lookup by packed location</li>
+ * <li>a BlockAccessor, which also skips the lookup while it stays in one chunk</li>
+ * </ul>
+ * Run on its own, it generates a world in memory around the ground at 0,0 without starting the game.
+ */
+public class BlockAccessBenchmark {
+    private static final CLogger LOGGER = new CLogger("BlockAccessBenchmark", false, true);
+
+    /**
+     * Half of the edge length of the cube that is read, in blocks.
+     */
+    private static final int RADIUS = 32;
+
+    private static final int WARMUP_PASSES = 5;
+    private static final int PASSES = 20;
+
+    private final World world;
+    private final int centerX;
+    private final int centerY;
+    private final int centerZ;
+
+    public BlockAccessBenchmark(World world, int x, int y, int z) {
+        this.world = world;
+        this.centerX = x;
+        this.centerY = y;
+        this.centerZ = z;
+    }
+
+    public static void main(String[] args) {
+        World world = new World(Boxle.createOffline(), "BlockAccessBenchmark");
+        CellsWorldGen generator = new CellsWorldGen(0);
+        world.setGenerator(generator);
+        int centerY = generator.getGroundHeight(0, 0);
+        int range = RADIUS / Chunk.CHUNK_SIZE + 1; //every chunk the cube touches, plus one more for the neighbor links
+        int chunkY = centerY >> Chunk.CHUNK_SHIFT;
+        for (int x = -range; x <= range; x++) {
+            for (int y = chunkY - range; y <= chunkY + range; y++) {
+                for (int z = -range; z <= range; z++) {
+                    Vec3i loc = VecPool.getVec3i(x, y, z);
+                    world.createNewChunk(loc);
+                    VecPool.free(loc);
+                }
+            }
+        }
+        new BlockAccessBenchmark(world, 0, centerY, 0).run();
+    }
+
+    /**
+     * Runs the benchmark on the calling thread and logs the results.
+     */
+    public void run() {
+        long blocks = (long) PASSES * (RADIUS * 2) * (RADIUS * 2) * (RADIUS * 2);
+        for (int pass = 0; pass < WARMUP_PASSES; pass++) {
+            passLegacy();
+            passWorld();
+            passAccessor();
+        }
+        long legacySum = 0;
+        long worldSum = 0;
+        long accessorSum = 0;
+
+        long start = System.nanoTime();
+        for (int pass = 0; pass < PASSES; pass++) {
+            legacySum += passLegacy();
+        }
+        long legacyTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int pass = 0; pass < PASSES; pass++) {
+            worldSum += passWorld();
+        }
+        long worldTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int pass = 0; pass < PASSES; pass++) {
+            accessorSum += passAccessor();
+        }
+        long accessorTime = System.nanoTime() - start;
+
+        LOGGER.logInfo(String.format("Read %d blocks around %d,%d,%d.", blocks, centerX, centerY, centerZ));
+        LOGGER.logInfo(String.format("Legacy (Vec3i + floor):  %.2f ns/block", (double) legacyTime / blocks));
+        LOGGER.logInfo(String.format("World.getBlockIdAt():    %.2f ns/block", (double) worldTime / blocks));
+        LOGGER.logInfo(String.format("BlockAccessor:           %.2f ns/block", (double) accessorTime / blocks));
+        if (legacySum != worldSum || worldSum != accessorSum) {
+            LOGGER.logWarning("Results differ, chunks may have changed during the benchmark.");
+        }
+    }
+
+    private long passLegacy() {
+        long sum = 0;
+        for (int x = centerX - RADIUS; x < centerX + RADIUS; x++) {
+            for (int z = centerZ - RADIUS; z < centerZ + RADIUS; z++) {
+                for (int y = centerY - RADIUS; y < centerY + RADIUS; y++) {
+                    Vec3i loc = VecPool.getVec3i(x, y, z);
+                    Vec3i cLoc = legacyGlobalToChunk(loc.duplicate());
+                    Chunk chunk = world.getChunks().getChunk(cLoc);
+                    if (chunk != null) {
+                        Vec3i bLoc = legacyGlobalToBlock(loc.duplicate());
+                        sum += chunk.getBlockIdAt(bLoc.x, bLoc.y, bLoc.z);
+                        VecPool.free(bLoc);
+                    } else {
+                        sum += Blocks.air.getRuntimeId();
+                    }
+                    VecPool.free(cLoc);
+                    VecPool.free(loc);
+                }
+            }
+        }
+        return sum;
+    }
+
+    private long passWorld() {
+        long sum = 0;
+        for (int x = centerX - RADIUS; x < centerX + RADIUS; x++) {
+            for (int z = centerZ - RADIUS; z < centerZ + RADIUS; z++) {
+                for (int y = centerY - RADIUS; y < centerY + RADIUS; y++) {
+                    sum += world.getBlockIdAt(x, y, z);
+                }
+            }
+        }
+        return sum;
+    }
+
+    private long passAccessor() {
+        BlockAccessor accessor = world.createAccessor();
+        long sum = 0;
+        for (int x = centerX - RADIUS; x < centerX + RADIUS; x++) {
+            for (int z = centerZ - RADIUS; z < centerZ + RADIUS; z++) {
+                for (int y = centerY - RADIUS; y < centerY + RADIUS; y++) {
+                    sum += accessor.getBlockId(x, y, z);
+                }
+            }
+        }
+        return sum;
+    }
+
+    private static Vec3i legacyGlobalToChunk(Vec3i global) {
+        global.x = (int) Math.floor((float) global.x / (float) Chunk.CHUNK_SIZE);
+        global.y = (int) Math.floor((float) global.y / (float) Chunk.CHUNK_SIZE);
+        global.z = (int) Math.floor((float) global.z / (float) Chunk.CHUNK_SIZE);
+        return global;
+    }
+
+    private static Vec3i legacyGlobalToBlock(Vec3i global) {
+        global.x = legacyGlobalToBlock(global.x);
+        global.y = legacyGlobalToBlock(global.y);
+        global.z = legacyGlobalToBlock(global.z);
+        return global;
+    }
+
+    private static int legacyGlobalToBlock(int global) {
+        if (global >= 0) {
+            return global % Chunk.CHUNK_SIZE;
+        } else {
+            return Chunk.CHUNK_SIZE - 1 + ((global + 1) % Chunk.CHUNK_SIZE);
+        }
+    }
+}